@@ -1,4 +1,4 @@
-package com.evtrading.swp391.util;
+package com.evtrading.swp391.benchmark;
 
 import java.math.BigDecimal;
 import java.net.URLEncoder;
@@ -6,7 +6,11 @@ import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
 import java.util.*;
 
-public class VnpayUtil {
+/**
+ * Bản VnpayUtil trước khi có VnpaySigner, giữ lại nguyên văn làm mốc so sánh cho VnpaySigningBenchmark.
+ * Chỉ bỏ các dòng System.out để không làm nhiễu kết quả đo.
+ */
+final class LegacyVnpayUtil {
 
     public static String createPaymentUrl(String tmnCode, String hashSecret, String payUrl, String returnUrl,
                                           BigDecimal amount, String paymentId, String ipAddr) {
@@ -57,10 +61,6 @@ public class VnpayUtil {
         }
         query.append("&vnp_SecureHash=").append(secureHash);
 
-        // In log để debug (có thể xóa sau)
-        System.out.println("HashData: " + hashData);
-        System.out.println("SecureHash: " + secureHash);
-
         return payUrl + "?" + query.toString();
     }
 
@@ -0,0 +1,85 @@
+package com.evtrading.swp391.benchmark;
+
+import com.evtrading.swp391.util.VnpaySigner;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * So sánh VnpayUtil cũ (LegacyVnpayUtil) với VnpaySigner khi tạo URL thanh toán và xác thực callback.
+ *
+ * Chạy: mvn -Pbenchmark test-compile exec:exec
+ * (-Djmh.args="VnpaySigningBenchmark -prof gc" để xem thêm số byte cấp phát mỗi thao tác)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class VnpaySigningBenchmark {
+
+    private static final String SECRET = "VNPAYBENCHMARKSECRETKEY0123456789";
+    private static final String TMN_CODE = "EVTRADE1";
+    private static final String PAY_URL = "https://sandbox.vnpayment.vn/paymentv2/vpcpay.html";
+    private static final String RETURN_URL = "http://localhost:8080/api/vnpay/callback";
+    private static final BigDecimal AMOUNT = new BigDecimal("125000000");
+    private static final String TXN_REF = "ORDER_1024_1760000000000";
+
+    private VnpaySigner signer;
+    private Map<String, String> callback;
+
+    @Setup
+    public void setUp() {
+        signer = new VnpaySigner(SECRET);
+        callback = new HashMap<>();
+        callback.put("vnp_Amount", "12500000000");
+        callback.put("vnp_BankCode", "NCB");
+        callback.put("vnp_BankTranNo", "VNP14567890");
+        callback.put("vnp_CardType", "ATM");
+        callback.put("vnp_OrderInfo", "Thanh toan don hang " + TXN_REF);
+        callback.put("vnp_PayDate", "20251018103000");
+        callback.put("vnp_ResponseCode", "00");
+        callback.put("vnp_TmnCode", TMN_CODE);
+        callback.put("vnp_TransactionNo", "14567890");
+        callback.put("vnp_TransactionStatus", "00");
+        callback.put("vnp_TxnRef", TXN_REF);
+        callback.put("vnp_SecureHash", signer.sign(VnpaySigner.buildHashData(callback)));
+    }
+
+    @Benchmark
+    public String createPaymentUrlLegacy() {
+        return LegacyVnpayUtil.createPaymentUrl(TMN_CODE, SECRET, PAY_URL, RETURN_URL, AMOUNT, TXN_REF, "127.0.0.1");
+    }
+
+    @Benchmark
+    public String createPaymentUrlSigner() {
+        return signer.createPaymentUrl(TMN_CODE, PAY_URL, RETURN_URL, AMOUNT, TXN_REF, "127.0.0.1");
+    }
+
+    // Giống VnpayService trước đây: chép map, bỏ vnp_SecureHash, dựng hash data, ký rồi so sánh
+    @Benchmark
+    public boolean verifyCallbackLegacy() {
+        Map<String, String> paramsForHash = new HashMap<>(callback);
+        paramsForHash.remove("vnp_SecureHash");
+        String hashData = LegacyVnpayUtil.buildHashData(paramsForHash);
+        return LegacyVnpayUtil.hmacSHA512(SECRET, hashData).equalsIgnoreCase(callback.get("vnp_SecureHash"));
+    }
+
+    @Benchmark
+    public boolean verifyCallbackSigner() {
+        return signer.verify(callback);
+    }
+}
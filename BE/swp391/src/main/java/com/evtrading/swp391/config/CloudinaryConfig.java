@@ -2,11 +2,13 @@ package com.evtrading.swp391.config;
 
 import com.cloudinary.Cloudinary;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import java.util.Map;
 
 @Configuration
+@ConditionalOnProperty(name = "app.storage.type", havingValue = "cloudinary", matchIfMissing = true)
 public class CloudinaryConfig {
     @Bean
     public Cloudinary cloudinary(@Value("${cloudinary.cloud-name}") String cloudName,
@@ -20,12 +20,15 @@ public final class SecurityPaths {
         "/api/vnpay/ipn",
         "/api/vnpay/callback",
         "/api/listings/search",
+        "/api/listings/search/cursor",
+        "/api/images/**",
         "/api/brands",
         "/api/categories",
         // DocuSeal webhook callback (no auth; verified by header secret)
         "/api/contracts/webhook",
         "/api/system-config/public/**", // Thêm dòng này
         "/api/sellers/**",
+        "/actuator/health",
 
     };
 
@@ -38,11 +41,13 @@ public final class SecurityPaths {
 
     private static final String[] MODERATOR_ENDPOINTS = new String[] {
         // Add moderator-only endpoints here
+        "/api/moderation/**"
     };
 
     private static final String[] ADMIN_ENDPOINTS = new String[] {
         // Add admin-only endpoints here
-        "/api/system-config/**"
+        "/api/system-config/**",
+        "/actuator/**"
     };
 
     private SecurityPaths() {
@@ -0,0 +1,14 @@
+package com.evtrading.swp391.config;
+
+import com.evtrading.swp391.util.VnpaySigner;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class VnpayConfig {
+    @Bean
+    public VnpaySigner vnpaySigner(@Value("${vnpay.hashSecret}") String hashSecret) {
+        return new VnpaySigner(hashSecret);
+    }
+}
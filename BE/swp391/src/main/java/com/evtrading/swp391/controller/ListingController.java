@@ -1,5 +1,8 @@
 package com.evtrading.swp391.controller;
 
+import com.evtrading.swp391.dto.BulkModerationRequestDTO;
+import com.evtrading.swp391.dto.BulkModerationResultDTO;
+import com.evtrading.swp391.dto.CursorPageDTO;
 import com.evtrading.swp391.dto.ListingRequestDTO;
 import com.evtrading.swp391.dto.ListingResponseDTO;
 import com.evtrading.swp391.service.ListingService;
@@ -29,6 +32,7 @@ import java.io.IOException;
 import java.util.List;
 import java.math.BigDecimal;
 import com.evtrading.swp391.dto.PaymentResponseDTO; // Thêm import này
+import com.evtrading.swp391.exception.ListingLeasedException;
 
 @RestController
 @RequestMapping("/api/listings")
@@ -138,10 +142,12 @@ public class ListingController {
     @SecurityRequirement(name = "bearerAuth")
     @PostMapping("/{id}/approve")
     @PreAuthorize("hasRole('MODERATOR') or hasRole('ADMIN')")
-    public ResponseEntity<ListingResponseDTO> approveListing(@PathVariable Integer id) {
+    public ResponseEntity<ListingResponseDTO> approveListing(@PathVariable Integer id, Authentication authentication) {
         try {
-            ListingResponseDTO approvedListing = listingService.approveListing(id);
+            ListingResponseDTO approvedListing = listingService.approveListing(id, authentication.getName());
             return ResponseEntity.ok(approvedListing);
+        } catch (ListingLeasedException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST)
                     .body(null);
@@ -154,16 +160,60 @@ public class ListingController {
     @PreAuthorize("hasRole('MODERATOR') or hasRole('ADMIN')")
     public ResponseEntity<ListingResponseDTO> rejectListing(
             @PathVariable Integer id,
-            @RequestParam(required = false) String reason) {
+            @RequestParam(required = false) String reason,
+            Authentication authentication) {
         try {
-            ListingResponseDTO rejectedListing = listingService.rejectListing(id, reason);
+            ListingResponseDTO rejectedListing = listingService.rejectListing(id, reason, authentication.getName());
             return ResponseEntity.ok(rejectedListing);
+        } catch (ListingLeasedException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST)
                     .body(null);
         }
     }
 
+    @Operation(summary = "Duyệt hàng loạt", description = "Moderator duyệt nhiều bài PENDING trong một lần; trả về kết quả cho từng id")
+    @SecurityRequirement(name = "bearerAuth")
+    @PostMapping("/bulk/approve")
+    @PreAuthorize("hasRole('MODERATOR') or hasRole('ADMIN')")
+    public ResponseEntity<BulkModerationResultDTO> bulkApproveListings(@RequestBody BulkModerationRequestDTO request,
+            Authentication authentication) {
+        try {
+            return ResponseEntity.ok(listingService.bulkApproveListings(request.getIds(), authentication.getName()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    @Operation(summary = "Từ chối hàng loạt", description = "Moderator từ chối nhiều bài PENDING trong một lần; trả về kết quả cho từng id")
+    @SecurityRequirement(name = "bearerAuth")
+    @PostMapping("/bulk/reject")
+    @PreAuthorize("hasRole('MODERATOR') or hasRole('ADMIN')")
+    public ResponseEntity<BulkModerationResultDTO> bulkRejectListings(@RequestBody BulkModerationRequestDTO request,
+            Authentication authentication) {
+        try {
+            return ResponseEntity.ok(listingService.bulkRejectListings(request.getIds(), request.getReason(),
+                    authentication.getName()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    @Operation(summary = "Xóa hàng loạt", description = "Admin hoặc Moderator xóa (soft delete) nhiều bài trong một lần; trả về kết quả cho từng id")
+    @SecurityRequirement(name = "bearerAuth")
+    @PostMapping("/bulk/delete")
+    @PreAuthorize("hasRole('ADMIN') or hasRole('MODERATOR')")
+    public ResponseEntity<BulkModerationResultDTO> bulkDeleteListings(@RequestBody BulkModerationRequestDTO request,
+            Authentication authentication) {
+        try {
+            return ResponseEntity.ok(listingService.bulkDeleteListings(request.getIds(), request.getReason(),
+                    authentication.getName()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
     @Operation(summary = "Tạo thanh toán để gia hạn bài đăng", description = "Tạo URL thanh toán VNPAY để gia hạn bài đăng thêm x ngày.")
     @SecurityRequirement(name = "bearerAuth")
     @PostMapping("/{id}/extend-payment")
@@ -187,17 +237,21 @@ public class ListingController {
     @PreAuthorize("hasRole('ADMIN') or hasRole('MODERATOR')")
     public ResponseEntity<ListingResponseDTO> deleteListing(
             @PathVariable Integer id,
-            @RequestParam(required = false) String reason) {
+            @RequestParam(required = false) String reason,
+            Authentication authentication) {
         try {
-            ListingResponseDTO deleted = listingService.deleteListing(id, reason);
+            ListingResponseDTO deleted = listingService.deleteListing(id, reason, authentication.getName());
             return ResponseEntity.ok(deleted);
+        } catch (ListingLeasedException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null);
         }
     }
 
     @SecurityRequirements
-    @Operation(summary = "Tìm kiếm bài đăng", description = "Tìm kiếm theo từ khóa, category, brand, khoảng giá, năm sản xuất...")
+    @Operation(summary = "Tìm kiếm bài đăng", description = "Tìm kiếm theo từ khóa, category, brand, khoảng giá, năm sản xuất... "
+            + "facets=true để nhận thêm số bài theo category, brand, khoảng giá và năm trong trường facets.")
     @GetMapping("/search")
     public ResponseEntity<Page<ListingResponseDTO>> searchListings(
             @RequestParam(required = false) String keyword,
@@ -213,6 +267,7 @@ public class ListingController {
             @RequestParam(defaultValue = "10") int size,
             @RequestParam(defaultValue = "createdAt") String sortBy,
             @RequestParam(defaultValue = "desc") String sortDir,
+            @RequestParam(defaultValue = "false") boolean facets,
             Authentication authentication) {
         Sort.Direction direction = sortDir.equalsIgnoreCase("asc") ? Sort.Direction.ASC : Sort.Direction.DESC;
         Pageable pageable = PageRequest.of(page, size, Sort.by(direction, sortBy));
@@ -231,7 +286,53 @@ public class ListingController {
         criteria.setMaxYear(maxYear);
         criteria.setUserId(userId);
 
-        Page<ListingResponseDTO> result = listingSearchService.search(criteria, pageable, isModerator);
+        Page<ListingResponseDTO> result = listingSearchService.search(criteria, pageable, isModerator, facets);
         return ResponseEntity.ok(result);
     }
+
+    @SecurityRequirements
+    @Operation(summary = "Tìm kiếm bài đăng (phân trang cursor)",
+            description = "Cùng bộ lọc với /search nhưng phân trang bằng cursor: không có tổng số trang, "
+                    + "truyền nextCursor của kết quả trước vào tham số cursor để lấy trang kế tiếp. "
+                    + "sortBy hỗ trợ createdAt, price, listingID.")
+    @GetMapping("/search/cursor")
+    public ResponseEntity<CursorPageDTO<ListingResponseDTO>> searchListingsByCursor(
+            @RequestParam(required = false) String keyword,
+            @RequestParam(required = false) Integer categoryId,
+            @RequestParam(required = false) Integer brandId,
+            @RequestParam(required = false) String status,
+            @RequestParam(required = false) BigDecimal minPrice,
+            @RequestParam(required = false) BigDecimal maxPrice,
+            @RequestParam(required = false) Integer minYear,
+            @RequestParam(required = false) Integer maxYear,
+            @RequestParam(required = false) Integer userId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(defaultValue = "createdAt") String sortBy,
+            @RequestParam(defaultValue = "desc") String sortDir,
+            Authentication authentication) {
+        Sort.Direction direction = sortDir.equalsIgnoreCase("asc") ? Sort.Direction.ASC : Sort.Direction.DESC;
+
+        boolean isModerator = authentication != null && authentication.getAuthorities().stream()
+                .anyMatch(a -> a.getAuthority().equals("ROLE_MODERATOR") || a.getAuthority().equals("ROLE_ADMIN"));
+
+        ListingSearchCriteria criteria = new ListingSearchCriteria();
+        criteria.setKeyword(keyword);
+        criteria.setCategoryId(categoryId);
+        criteria.setBrandId(brandId);
+        criteria.setStatus(status);
+        criteria.setMinPrice(minPrice);
+        criteria.setMaxPrice(maxPrice);
+        criteria.setMinYear(minYear);
+        criteria.setMaxYear(maxYear);
+        criteria.setUserId(userId);
+
+        try {
+            CursorPageDTO<ListingResponseDTO> result = listingSearchService.searchByCursor(
+                    criteria, sortBy, direction, size, cursor, isModerator);
+            return ResponseEntity.ok(result);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null);
+        }
+    }
 }
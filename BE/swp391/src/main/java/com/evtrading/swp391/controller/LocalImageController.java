@@ -0,0 +1,82 @@
+package com.evtrading.swp391.controller;
+
+import com.evtrading.swp391.storage.LocalImageStorage;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.security.SecurityRequirements;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Phục vụ ảnh của LocalImageStorage (chỉ bật khi app.storage.type=local).
+ *
+ * Ảnh không bao giờ bị ghi đè nên trả Cache-Control immutable kèm ETag/Last-Modified (304 khi client đã có).
+ * Request có header Range được Spring trả 206 từ FileSystemResource (đọc qua FileChannel).
+ * Request tải cả file trên Tomcat dùng sendfile: dữ liệu đi thẳng từ page cache ra socket, không qua heap.
+ */
+@RestController
+@RequestMapping("/api/images")
+@ConditionalOnProperty(name = "app.storage.type", havingValue = "local")
+@Tag(name = "Images", description = "Ảnh bài đăng khi lưu trên đĩa cục bộ")
+public class LocalImageController {
+
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private final LocalImageStorage storage;
+
+    public LocalImageController(LocalImageStorage storage) {
+        this.storage = storage;
+    }
+
+    @SecurityRequirements
+    @Operation(summary = "Lấy ảnh", description = "Hỗ trợ Range, ETag và cache dài hạn")
+    @GetMapping("/{name}")
+    public ResponseEntity<Resource> getImage(@PathVariable String name, WebRequest webRequest,
+                                             HttpServletRequest request) throws IOException {
+        Path path = storage.resolve(name);
+        if (path == null) {
+            return ResponseEntity.notFound().build();
+        }
+
+        long size = Files.size(path);
+        long lastModified = Files.getLastModifiedTime(path).toMillis();
+        String etag = "\"" + name + "-" + size + "\"";
+        if (webRequest.checkNotModified(etag, lastModified)) {
+            return null;
+        }
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(MediaTypeFactory.getMediaType(name).orElse(MediaType.APPLICATION_OCTET_STREAM))
+                .cacheControl(CacheControl.maxAge(Duration.ofDays(365)).cachePublic().immutable())
+                .header(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+        if (request.getHeader(HttpHeaders.RANGE) == null
+                && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            request.setAttribute(SENDFILE_FILENAME, path.toString());
+            request.setAttribute(SENDFILE_START, 0L);
+            request.setAttribute(SENDFILE_END, size);
+            return response.contentLength(size).build();
+        }
+        return response.body(new FileSystemResource(path));
+    }
+}
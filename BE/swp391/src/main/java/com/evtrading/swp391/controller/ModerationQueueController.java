@@ -0,0 +1,61 @@
+package com.evtrading.swp391.controller;
+
+import com.evtrading.swp391.dto.ModerationBatchDTO;
+import com.evtrading.swp391.service.ListingService;
+import com.evtrading.swp391.service.ModerationQueueService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/moderation/queue")
+@Tag(name = "Moderation Queue", description = "Hàng đợi kiểm duyệt có lease cho nhiều moderator làm việc song song")
+@SecurityRequirement(name = "bearerAuth")
+@PreAuthorize("hasRole('MODERATOR') or hasRole('ADMIN')")
+public class ModerationQueueController {
+
+    private final ModerationQueueService moderationQueueService;
+    private final ListingService listingService;
+
+    public ModerationQueueController(ModerationQueueService moderationQueueService, ListingService listingService) {
+        this.moderationQueueService = moderationQueueService;
+        this.listingService = listingService;
+    }
+
+    @PostMapping("/claim")
+    @Operation(summary = "Nhận một lô bài cần kiểm duyệt",
+            description = "Giữ riêng tối đa size bài (PENDING/FLAGGED) cho moderator hiện tại tới leaseExpiresAt. "
+                    + "order=OLDEST_FIRST (mặc định) hoặc FLAGGED_FIRST. Lease hết hạn thì bài tự trả về hàng đợi.")
+    public ResponseEntity<ModerationBatchDTO> claim(
+            @RequestParam(defaultValue = "20") int size,
+            @RequestParam(defaultValue = "OLDEST_FIRST") ModerationQueueService.Order order,
+            Authentication authentication) {
+        ModerationQueueService.Claim claim = moderationQueueService.claim(authentication.getName(), size, order);
+        return ResponseEntity.ok(new ModerationBatchDTO(
+                listingService.getListingsByIds(claim.listingIds()), claim.expiresAt()));
+    }
+
+    @PostMapping("/renew")
+    @Operation(summary = "Gia hạn lease", description = "Gia hạn các bài moderator đang giữ; trả về id được gia hạn.")
+    public ResponseEntity<ModerationQueueService.Claim> renew(@RequestBody List<Integer> listingIds,
+                                                              Authentication authentication) {
+        return ResponseEntity.ok(moderationQueueService.renew(authentication.getName(), listingIds));
+    }
+
+    @PostMapping("/release")
+    @Operation(summary = "Trả bài về hàng đợi", description = "Bỏ giữ các bài chưa xử lý để moderator khác nhận.")
+    public ResponseEntity<Void> release(@RequestBody List<Integer> listingIds, Authentication authentication) {
+        moderationQueueService.release(authentication.getName(), listingIds);
+        return ResponseEntity.noContent().build();
+    }
+}
@@ -16,6 +16,7 @@ import com.evtrading.swp391.dto.PaymentResponseDTO;
 import com.evtrading.swp391.dto.TransactionReportDTO;
 import com.evtrading.swp391.dto.TransactionDTO;
 import com.evtrading.swp391.dto.AdminOrderContractDTO;
+import com.evtrading.swp391.exception.ListingUnavailableException;
 import com.evtrading.swp391.service.OrderService;
 
 import io.swagger.v3.oas.annotations.Operation;
@@ -52,6 +53,10 @@ public class OrderController {
             OrderResponseDTO createdOrder = orderService.createOrder(orderRequest, authentication);
             logger.info("Order created successfully: {}", createdOrder.getOrderId());
             return ResponseEntity.status(HttpStatus.CREATED).body(createdOrder);
+        } catch (ListingUnavailableException e) {
+            // Bài vừa được người khác đặt mua hoặc không còn mở bán
+            logger.info("Listing {} not available for order", e.getListingId());
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(null);
         } catch (RuntimeException e) {
             logger.error("Error creating order: {}", e.getMessage());
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null);
@@ -2,11 +2,13 @@ package com.evtrading.swp391.controller;
 
 import com.evtrading.swp391.dto.UpdateExtendPriceRequest;
 import com.evtrading.swp391.entity.SystemConfig;
+import com.evtrading.swp391.event.SystemConfigChangedEvent;
 import com.evtrading.swp391.repository.SystemConfigRepository;
 import com.evtrading.swp391.service.SystemConfigService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
@@ -15,8 +17,11 @@ import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.security.access.prepost.PreAuthorize;
 
+import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @RestController
@@ -24,39 +29,71 @@ import java.util.stream.Collectors;
 @Tag(name = "System Config", description = "API for system configurations")
 public class SystemConfigController {
 
+    // Chỉ các key này được trả về qua /public (không cần đăng nhập); các key spam.* chỉ admin được biết
+    private static final Set<String> PUBLIC_KEYS = Set.of("EXTEND_PRICE_PER_DAY", "FREE_LISTING_DAYS", "COMMISSION_RATE");
+
+    // Các key mà ứng dụng đọc (có giá trị mặc định trong code); /update tạo dòng mới nếu DB chưa có
+    private static final Set<String> KNOWN_KEYS = Set.of(
+            "EXTEND_PRICE_PER_DAY", "FREE_LISTING_DAYS", "COMMISSION_RATE",
+            "spam.bannedKeywords", "spam.nearDuplicateThreshold",
+            "spam.maxPostsPer5m", "spam.maxPostsPer1h", "spam.maxPostsPer24h");
+
     private final SystemConfigRepository systemConfigRepository;
     private final SystemConfigService systemConfigService;
+    private final ApplicationEventPublisher eventPublisher;
 
-    public SystemConfigController(SystemConfigRepository systemConfigRepository, SystemConfigService systemConfigService) {
+    public SystemConfigController(SystemConfigRepository systemConfigRepository, SystemConfigService systemConfigService,
+                                  ApplicationEventPublisher eventPublisher) {
         this.systemConfigRepository = systemConfigRepository;
         this.systemConfigService = systemConfigService;
+        this.eventPublisher = eventPublisher;
     }
 
     @GetMapping("/public")
-    @Operation(summary = "Lấy các cấu hình hệ thống public", description = "Lấy giá trị của các cấu hình hệ thống dựa trên danh sách các 'key' được cung cấp.")
+    @Operation(summary = "Lấy các cấu hình hệ thống public", description = "Lấy giá trị của các cấu hình hệ thống dựa trên danh sách các 'key' được cung cấp. Key không public bị bỏ qua.")
     public Map<String, String> getPublicConfigs(@RequestParam("keys") List<String> keys) {
-        List<SystemConfig> configs = systemConfigRepository.findByConfigKeyIn(keys);
+        List<String> allowed = keys.stream().filter(PUBLIC_KEYS::contains).toList();
+        if (allowed.isEmpty()) {
+            return Map.of();
+        }
+        List<SystemConfig> configs = systemConfigRepository.findByConfigKeyIn(allowed);
         return configs.stream()
                 .collect(Collectors.toMap(SystemConfig::getConfigKey, SystemConfig::getConfigValue));
     }
 
-
-
     @PutMapping("/update")
     @PreAuthorize("hasRole('ADMIN')")
     @SecurityRequirement(name = "bearerAuth")
     @Operation(summary = "Cập nhật nhiều cấu hình hệ thống", description = "Chỉ admin mới được phép thay đổi các cấu hình hệ thống.")
     public Map<String, String> updateConfigs(@RequestBody Map<String, String> updates) {
-        List<SystemConfig> configs = systemConfigRepository.findByConfigKeyIn(updates.keySet().stream().toList());
+        List<SystemConfig> configs = new ArrayList<>(
+                systemConfigRepository.findByConfigKeyIn(updates.keySet().stream().toList()));
+        // Key đã biết nhưng chưa có dòng trong DB (ví dụ spam.*): tạo mới thay vì bỏ qua
+        Set<String> existing = configs.stream().map(SystemConfig::getConfigKey).collect(Collectors.toSet());
+        updates.keySet().stream()
+                .filter(key -> KNOWN_KEYS.contains(key) && !existing.contains(key))
+                .forEach(key -> {
+                    SystemConfig config = new SystemConfig();
+                    config.setConfigKey(key);
+                    configs.add(config);
+                });
+        List<String> changedKeys = new ArrayList<>();
+        Date now = new Date();
         for (SystemConfig config : configs) {
             String newValue = updates.get(config.getConfigKey());
             if (newValue != null) {
                 config.setConfigValue(newValue);
+                config.setUpdatedAt(now);
                 systemConfigRepository.save(config);
+                changedKeys.add(config.getConfigKey());
             }
         }
+        if (!changedKeys.isEmpty()) {
+            eventPublisher.publishEvent(new SystemConfigChangedEvent(changedKeys));
+        }
         // Trả về các giá trị mới
         return configs.stream()
+                .filter(config -> config.getConfigValue() != null)
                 .collect(Collectors.toMap(SystemConfig::getConfigKey, SystemConfig::getConfigValue));
     }
-}
\ No newline at end of file
+}
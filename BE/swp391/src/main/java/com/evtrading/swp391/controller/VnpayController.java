@@ -33,8 +33,9 @@ public class VnpayController {
 
     @PostMapping("/ipn")
     public String vnpayIpn(@RequestParam Map<String, String> params) {
-        VnpayCallbackResultDTO result = vnpayService.handleVnpayCallback(params);
+        // Chỉ lưu IPN vào hộp thư đến rồi trả lời ngay, kết quả được áp dụng bởi VnpayIpnProcessor
+        boolean accepted = vnpayService.receiveIpn(params);
         // VNPAY yêu cầu trả về mã này để xác nhận đã nhận IPN
-        return result.isSuccess() ? "00" : "01";
+        return accepted ? "00" : "01";
     }
 }
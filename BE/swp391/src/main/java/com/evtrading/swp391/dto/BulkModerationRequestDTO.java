@@ -0,0 +1,15 @@
+package com.evtrading.swp391.dto;
+
+import lombok.Data;
+import java.util.List;
+
+/**
+ * Body của các API duyệt/từ chối/xóa hàng loạt.
+ * Body ví dụ: { "ids": [12, 15, 18], "reason": "Thông tin không chính xác" }
+ */
+@Data
+public class BulkModerationRequestDTO {
+    private List<Integer> ids;
+    // Chỉ dùng cho reject và delete
+    private String reason;
+}
@@ -0,0 +1,38 @@
+package com.evtrading.swp391.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.util.List;
+
+/**
+ * Kết quả của một thao tác kiểm duyệt hàng loạt, gồm kết quả cho từng id theo thứ tự trong request.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BulkModerationResultDTO {
+
+    public enum Outcome {
+        UPDATED,
+        NOT_FOUND,
+        // Bài không ở trạng thái cho phép (hoặc vừa bị người khác đổi trạng thái)
+        INVALID_STATUS,
+        // Bài đang được moderator khác giữ trong hàng đợi kiểm duyệt
+        LEASED
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Item {
+        private Integer id;
+        private Outcome outcome;
+        // Trạng thái hiện tại của bài sau thao tác (null nếu không tìm thấy)
+        private String status;
+    }
+
+    private String action;
+    private int updated;
+    private List<Item> results;
+}
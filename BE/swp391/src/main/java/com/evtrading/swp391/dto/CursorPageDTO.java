@@ -0,0 +1,17 @@
+package com.evtrading.swp391.dto;
+
+import lombok.Data;
+import java.util.List;
+
+/**
+ * Một "trang" kết quả của chế độ phân trang theo cursor (keyset).
+ * Không có totalElements/totalPages vì chế độ này không chạy câu COUNT.
+ */
+@Data
+public class CursorPageDTO<T> {
+    private List<T> content;
+    private int size;
+    private boolean hasNext;
+    // Truyền lại vào tham số cursor để lấy trang kế tiếp; null khi đã hết dữ liệu
+    private String nextCursor;
+}
@@ -0,0 +1,26 @@
+package com.evtrading.swp391.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+
+import java.util.List;
+
+/**
+ * Page kèm facet counts. Khi không yêu cầu facet, facets = null và không xuất hiện trong JSON
+ * nên response giữ nguyên dạng Page như trước.
+ */
+public class FacetedPage<T> extends PageImpl<T> {
+
+    private final ListingFacetsDTO facets;
+
+    public FacetedPage(List<T> content, Pageable pageable, long total, ListingFacetsDTO facets) {
+        super(content, pageable, total);
+        this.facets = facets;
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public ListingFacetsDTO getFacets() {
+        return facets;
+    }
+}
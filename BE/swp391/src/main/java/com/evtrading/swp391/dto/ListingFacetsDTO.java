@@ -0,0 +1,20 @@
+package com.evtrading.swp391.dto;
+
+import lombok.Data;
+import java.util.Map;
+
+/**
+ * Số bài khớp theo từng giá trị facet, tính trên toàn bộ tập kết quả của một lần tìm kiếm
+ * (không chỉ trang hiện tại).
+ */
+@Data
+public class ListingFacetsDTO {
+    // categoryID -> số bài
+    private Map<Integer, Long> categories;
+    // brandID -> số bài
+    private Map<Integer, Long> brands;
+    // Nhãn khoảng giá (VND), ví dụ "50000000-200000000" hoặc "1000000000+" -> số bài (bài không có giá không được đếm)
+    private Map<String, Long> priceRanges;
+    // Năm sản xuất -> số bài (bài không có vehicle không được đếm)
+    private Map<Integer, Long> years;
+}
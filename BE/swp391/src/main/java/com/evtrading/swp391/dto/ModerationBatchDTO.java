@@ -0,0 +1,18 @@
+package com.evtrading.swp391.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Một lô bài đăng moderator vừa nhận từ hàng đợi kiểm duyệt, giữ riêng cho người đó tới leaseExpiresAt.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ModerationBatchDTO {
+    private List<ListingResponseDTO> listings;
+    private Date leaseExpiresAt;
+}
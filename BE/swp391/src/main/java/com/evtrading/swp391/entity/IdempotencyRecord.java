@@ -0,0 +1,44 @@
+package com.evtrading.swp391.entity;
+
+import jakarta.persistence.*;
+import java.util.Date;
+
+/**
+ * Response đã lưu cho một Idempotency-Key, dùng để trả lại nguyên văn khi client gửi lại request.
+ * recordKey là SHA-256 của (user, method, path, key) nên không lưu key gốc của client.
+ */
+@Entity
+public class IdempotencyRecord {
+    @Id
+    @Column(length = 64)
+    private String recordKey;
+
+    // SHA-256 của method + URI + query + body, để phát hiện cùng key nhưng khác nội dung
+    @Column(length = 64, nullable = false)
+    private String requestHash;
+
+    private Integer statusCode;
+    private String contentType;
+
+    @Lob
+    private byte[] responseBody;
+
+    private Date createdAt;
+    private Date expiresAt;
+
+    // Getters and Setters
+    public String getRecordKey() { return recordKey; }
+    public void setRecordKey(String recordKey) { this.recordKey = recordKey; }
+    public String getRequestHash() { return requestHash; }
+    public void setRequestHash(String requestHash) { this.requestHash = requestHash; }
+    public Integer getStatusCode() { return statusCode; }
+    public void setStatusCode(Integer statusCode) { this.statusCode = statusCode; }
+    public String getContentType() { return contentType; }
+    public void setContentType(String contentType) { this.contentType = contentType; }
+    public byte[] getResponseBody() { return responseBody; }
+    public void setResponseBody(byte[] responseBody) { this.responseBody = responseBody; }
+    public Date getCreatedAt() { return createdAt; }
+    public void setCreatedAt(Date createdAt) { this.createdAt = createdAt; }
+    public Date getExpiresAt() { return expiresAt; }
+    public void setExpiresAt(Date expiresAt) { this.expiresAt = expiresAt; }
+}
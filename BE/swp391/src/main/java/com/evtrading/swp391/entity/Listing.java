@@ -5,7 +5,18 @@ import java.math.BigDecimal;
 import java.util.Date;
 
 @Entity
+// Fetch plan cho các màn hình danh sách: join sẵn mọi quan hệ mà ListingMapper cần
+// trong một câu SELECT thay vì để các quan hệ EAGER tự bắn thêm query cho từng dòng
+@NamedEntityGraph(name = Listing.CARD_GRAPH, attributeNodes = {
+        @NamedAttributeNode(value = "user", subgraph = "user"),
+        @NamedAttributeNode("category"),
+        @NamedAttributeNode("brand"),
+        @NamedAttributeNode("vehicle"),
+        @NamedAttributeNode("battery")
+}, subgraphs = @NamedSubgraph(name = "user", attributeNodes = @NamedAttributeNode("role")))
 public class Listing {
+    public static final String CARD_GRAPH = "Listing.card";
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Integer listingID;
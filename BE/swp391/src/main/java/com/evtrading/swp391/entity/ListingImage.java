@@ -3,12 +3,19 @@ package com.evtrading.swp391.entity;
 import jakarta.persistence.*;
 
 @Entity
+// Index cho các câu kiểm tra ảnh trùng của SpamFilterService
+@Table(indexes = {
+        @Index(name = "ix_listing_image_url", columnList = "imageURL"),
+        @Index(name = "ix_listing_image_content_hash", columnList = "contentHash"),
+        @Index(name = "ix_listing_image_perceptual_hash", columnList = "perceptualHash")
+})
 public class ListingImage {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Integer imageID;
 
-    @ManyToOne
+    // LAZY: ảnh luôn được lấy theo listing nên không cần load lại Listing cho từng ảnh
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "listingID", nullable = false)
     private Listing listing;
 
@@ -16,6 +23,13 @@ public class ListingImage {
     // Indicates if this image is the primary image for the listing
     private Boolean isPrimary;
 
+    // SHA-256 (hex) của file ảnh, null với ảnh chỉ có URL
+    @Column(length = 64)
+    private String contentHash;
+
+    // dHash 64 bit của ảnh, null nếu không giải mã được
+    private Long perceptualHash;
+
     // Getters and Setters
     public Integer getImageID() { return imageID; }
     public void setImageID(Integer imageID) { this.imageID = imageID; }
@@ -25,5 +39,9 @@ public class ListingImage {
     public void setImageURL(String imageURL) { this.imageURL = imageURL; }
     public Boolean getIsPrimary() { return isPrimary; }
     public void setIsPrimary(Boolean isPrimary) { this.isPrimary = isPrimary; }
+    public String getContentHash() { return contentHash; }
+    public void setContentHash(String contentHash) { this.contentHash = contentHash; }
+    public Long getPerceptualHash() { return perceptualHash; }
+    public void setPerceptualHash(Long perceptualHash) { this.perceptualHash = perceptualHash; }
 
 }
\ No newline at end of file
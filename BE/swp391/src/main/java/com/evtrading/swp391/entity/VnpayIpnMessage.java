@@ -0,0 +1,58 @@
+package com.evtrading.swp391.entity;
+
+import jakarta.persistence.*;
+import java.util.Date;
+
+/**
+ * IPN của VNPAY đã xác thực chữ ký, chờ worker áp dụng (hộp thư đến).
+ * Mỗi vnp_TxnRef chỉ có một bản ghi nên IPN gửi lại bị bỏ qua ngay khi nhận.
+ */
+@Entity
+public class VnpayIpnMessage {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long messageID;
+
+    @Column(name = "txn_ref", nullable = false, unique = true)
+    private String txnRef;
+
+    // Dùng để giữ thứ tự xử lý theo từng transaction
+    private Integer transactionId;
+
+    private String responseCode;
+
+    // Toàn bộ tham số IPN (JSON) để đối soát
+    @Lob
+    private String payload;
+
+    private String status;        // PENDING, DONE, FAILED
+    private Integer attempts;
+    private String lastError;
+    private Date receivedAt;
+    private Date nextAttemptAt;
+    private Date processedAt;
+
+    // Getters and Setters
+    public Long getMessageID() { return messageID; }
+    public void setMessageID(Long messageID) { this.messageID = messageID; }
+    public String getTxnRef() { return txnRef; }
+    public void setTxnRef(String txnRef) { this.txnRef = txnRef; }
+    public Integer getTransactionId() { return transactionId; }
+    public void setTransactionId(Integer transactionId) { this.transactionId = transactionId; }
+    public String getResponseCode() { return responseCode; }
+    public void setResponseCode(String responseCode) { this.responseCode = responseCode; }
+    public String getPayload() { return payload; }
+    public void setPayload(String payload) { this.payload = payload; }
+    public String getStatus() { return status; }
+    public void setStatus(String status) { this.status = status; }
+    public Integer getAttempts() { return attempts; }
+    public void setAttempts(Integer attempts) { this.attempts = attempts; }
+    public String getLastError() { return lastError; }
+    public void setLastError(String lastError) { this.lastError = lastError; }
+    public Date getReceivedAt() { return receivedAt; }
+    public void setReceivedAt(Date receivedAt) { this.receivedAt = receivedAt; }
+    public Date getNextAttemptAt() { return nextAttemptAt; }
+    public void setNextAttemptAt(Date nextAttemptAt) { this.nextAttemptAt = nextAttemptAt; }
+    public Date getProcessedAt() { return processedAt; }
+    public void setProcessedAt(Date processedAt) { this.processedAt = processedAt; }
+}
@@ -0,0 +1,23 @@
+package com.evtrading.swp391.event;
+
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * Phát ra sau khi ListingCatalogSnapshot dựng lại xong, mang theo các bài đã thay đổi kể từ lần dựng trước.
+ *
+ * Giữa ListingChangedEvent và lần dựng lại, bản chụp vẫn trả lời bằng các cột cũ; các cache dựng trên
+ * kết quả của bản chụp phải xóa lại các mục bị ảnh hưởng khi nhận event này.
+ */
+public class ListingCatalogRebuiltEvent {
+
+    private final Set<Integer> listingIds;
+
+    public ListingCatalogRebuiltEvent(Collection<Integer> listingIds) {
+        this.listingIds = Set.copyOf(listingIds);
+    }
+
+    public Set<Integer> getListingIds() {
+        return listingIds;
+    }
+}
@@ -0,0 +1,28 @@
+package com.evtrading.swp391.event;
+
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * Phát ra khi trạng thái hoặc nội dung của một hay nhiều bài đăng thay đổi
+ * (tạo, cập nhật, duyệt, từ chối, gia hạn, hết hạn, bán, xóa).
+ *
+ * Chỉ mang theo id; các listener tự đọc lại dữ liệu mới nhất nếu cần.
+ * Nên lắng nghe bằng @TransactionalEventListener(fallbackExecution = true) để chạy sau commit.
+ */
+public class ListingChangedEvent {
+
+    private final Set<Integer> listingIds;
+
+    public ListingChangedEvent(Collection<Integer> listingIds) {
+        this.listingIds = Set.copyOf(listingIds);
+    }
+
+    public static ListingChangedEvent of(Integer listingId) {
+        return new ListingChangedEvent(Set.of(listingId));
+    }
+
+    public Set<Integer> getListingIds() {
+        return listingIds;
+    }
+}
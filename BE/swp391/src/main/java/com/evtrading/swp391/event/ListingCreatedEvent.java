@@ -0,0 +1,32 @@
+package com.evtrading.swp391.event;
+
+import java.util.Date;
+
+/**
+ * Phát ra khi một bài đăng mới được lưu (phát kèm ListingChangedEvent).
+ * Dùng cho các thành phần chỉ quan tâm tới việc đăng bài mới, ví dụ giới hạn tần suất đăng.
+ */
+public class ListingCreatedEvent {
+
+    private final Integer listingId;
+    private final Integer userId;
+    private final Date createdAt;
+
+    public ListingCreatedEvent(Integer listingId, Integer userId, Date createdAt) {
+        this.listingId = listingId;
+        this.userId = userId;
+        this.createdAt = createdAt;
+    }
+
+    public Integer getListingId() {
+        return listingId;
+    }
+
+    public Integer getUserId() {
+        return userId;
+    }
+
+    public Date getCreatedAt() {
+        return createdAt;
+    }
+}
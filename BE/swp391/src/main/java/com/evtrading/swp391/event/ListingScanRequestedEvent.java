@@ -0,0 +1,18 @@
+package com.evtrading.swp391.event;
+
+/**
+ * Phát ra khi một bài đăng được lưu ở trạng thái PENDING_SCAN (tạo mới hoặc sửa lại),
+ * để ListingModerationPipeline đưa vào hàng đợi kiểm duyệt tự động sau khi transaction commit.
+ */
+public class ListingScanRequestedEvent {
+
+    private final Integer listingId;
+
+    public ListingScanRequestedEvent(Integer listingId) {
+        this.listingId = listingId;
+    }
+
+    public Integer getListingId() {
+        return listingId;
+    }
+}
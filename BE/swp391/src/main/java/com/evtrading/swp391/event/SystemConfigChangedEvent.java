@@ -0,0 +1,21 @@
+package com.evtrading.swp391.event;
+
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * Phát ra khi admin cập nhật cấu hình hệ thống, mang theo các configKey vừa đổi.
+ * Các thành phần giữ bản đã biên dịch của một cấu hình (ví dụ danh sách từ khóa cấm) dùng nó để nạp lại.
+ */
+public class SystemConfigChangedEvent {
+
+    private final Set<String> configKeys;
+
+    public SystemConfigChangedEvent(Collection<String> configKeys) {
+        this.configKeys = Set.copyOf(configKeys);
+    }
+
+    public Set<String> getConfigKeys() {
+        return configKeys;
+    }
+}
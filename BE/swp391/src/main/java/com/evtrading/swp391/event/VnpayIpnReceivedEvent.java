@@ -0,0 +1,22 @@
+package com.evtrading.swp391.event;
+
+/**
+ * Phát sau khi một IPN VNPAY được lưu vào hộp thư đến, để worker xử lý ngay sau commit.
+ */
+public class VnpayIpnReceivedEvent {
+    private final Long messageId;
+    private final Integer transactionId;
+
+    public VnpayIpnReceivedEvent(Long messageId, Integer transactionId) {
+        this.messageId = messageId;
+        this.transactionId = transactionId;
+    }
+
+    public Long getMessageId() {
+        return messageId;
+    }
+
+    public Integer getTransactionId() {
+        return transactionId;
+    }
+}
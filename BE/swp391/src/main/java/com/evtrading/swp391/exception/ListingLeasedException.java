@@ -0,0 +1,24 @@
+package com.evtrading.swp391.exception;
+
+/**
+ * Bài đăng đang được một moderator khác giữ (lease còn hạn) trong hàng đợi kiểm duyệt.
+ */
+public class ListingLeasedException extends RuntimeException {
+
+    private final Integer listingId;
+    private final String holder;
+
+    public ListingLeasedException(Integer listingId, String holder) {
+        super("Listing " + listingId + " is being reviewed by " + holder);
+        this.listingId = listingId;
+        this.holder = holder;
+    }
+
+    public Integer getListingId() {
+        return listingId;
+    }
+
+    public String getHolder() {
+        return holder;
+    }
+}
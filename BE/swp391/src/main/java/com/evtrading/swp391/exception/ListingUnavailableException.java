@@ -0,0 +1,18 @@
+package com.evtrading.swp391.exception;
+
+/**
+ * Bài đăng không còn mở bán (đã được người khác đặt mua, đã bán hoặc không ở trạng thái ACTIVE).
+ */
+public class ListingUnavailableException extends RuntimeException {
+
+    private final Integer listingId;
+
+    public ListingUnavailableException(Integer listingId) {
+        super("Listing is not available for purchase");
+        this.listingId = listingId;
+    }
+
+    public Integer getListingId() {
+        return listingId;
+    }
+}
@@ -2,12 +2,54 @@ package com.evtrading.swp391.repository;
 
 import com.evtrading.swp391.entity.ListingImage;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 @Repository
 public interface ListingImageRepository extends JpaRepository<ListingImage, Integer> {
     List<ListingImage> findByListingListingID(Integer listingId);
     void deleteByListingListingID(Integer listingId);
 
+    // Kiểm tra ảnh trùng với bài khác (excludeListingId = bài đang kiểm tra, null khi tạo mới)
+    @Query("SELECT CASE WHEN COUNT(i) > 0 THEN true ELSE false END FROM ListingImage i " +
+           "WHERE i.imageURL IN :urls AND (:excludeListingId IS NULL OR i.listing.listingID <> :excludeListingId)")
+    boolean existsByUrlOnOtherListing(@Param("urls") Collection<String> urls,
+                                      @Param("excludeListingId") Integer excludeListingId);
+
+    @Query("SELECT CASE WHEN COUNT(i) > 0 THEN true ELSE false END FROM ListingImage i " +
+           "WHERE i.contentHash IN :hashes AND (:excludeListingId IS NULL OR i.listing.listingID <> :excludeListingId)")
+    boolean existsByContentHashOnOtherListing(@Param("hashes") Collection<String> hashes,
+                                              @Param("excludeListingId") Integer excludeListingId);
+
+    // hashes chỉ nên gồm các dHash đủ đặc trưng (ImageFingerprint.distinctivePerceptualHash)
+    @Query("SELECT CASE WHEN COUNT(i) > 0 THEN true ELSE false END FROM ListingImage i " +
+           "WHERE i.perceptualHash IN :hashes AND (:excludeListingId IS NULL OR i.listing.listingID <> :excludeListingId)")
+    boolean existsByPerceptualHashOnOtherListing(@Param("hashes") Collection<Long> hashes,
+                                                 @Param("excludeListingId") Integer excludeListingId);
+
+    // Lấy ảnh của nhiều listing trong một câu IN (...) thay vì một query cho mỗi listing
+    @Query("SELECT i FROM ListingImage i WHERE i.listing.listingID IN :listingIds ORDER BY i.imageID")
+    List<ListingImage> findByListingIds(@Param("listingIds") Collection<Integer> listingIds);
+
+    /**
+     * Lấy ảnh cho cả một trang listing và gom nhóm theo listingID.
+     * Listing không có ảnh sẽ không xuất hiện trong map.
+     */
+    default Map<Integer, List<ListingImage>> findGroupedByListingIds(Collection<Integer> listingIds) {
+        Map<Integer, List<ListingImage>> grouped = new HashMap<>();
+        if (listingIds == null || listingIds.isEmpty()) {
+            return grouped;
+        }
+        for (ListingImage image : findByListingIds(listingIds)) {
+            grouped.computeIfAbsent(image.getListing().getListingID(), k -> new ArrayList<>()).add(image);
+        }
+        return grouped;
+    }
 }
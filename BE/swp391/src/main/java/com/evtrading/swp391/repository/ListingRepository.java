@@ -1,28 +1,56 @@
 package com.evtrading.swp391.repository;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 
+import jakarta.persistence.LockModeType;
+
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import com.evtrading.swp391.entity.Listing;
 import com.evtrading.swp391.repository.projection.CategoryListingCountProjection;
+import com.evtrading.swp391.repository.projection.ListingCatalogRowProjection;
+import com.evtrading.swp391.repository.projection.ListingExpiryProjection;
+import com.evtrading.swp391.repository.projection.ListingPostTimeProjection;
+import com.evtrading.swp391.repository.projection.ListingScopeProjection;
+import com.evtrading.swp391.repository.projection.ListingStatusProjection;
+import com.evtrading.swp391.repository.projection.ListingTextProjection;
 
 @Repository
-public interface ListingRepository extends JpaRepository<Listing, Integer>, JpaSpecificationExecutor<Listing> {
+public interface ListingRepository extends JpaRepository<Listing, Integer>, JpaSpecificationExecutor<Listing>,
+        ListingRepositoryCustom {
+    // Các truy vấn phục vụ trang danh sách dùng fetch plan Listing.card (một câu SELECT có JOIN)
+    @EntityGraph(Listing.CARD_GRAPH)
     Page<Listing> findByStatus(String status, Pageable pageable);
+    @EntityGraph(Listing.CARD_GRAPH)
     Page<Listing> findByUserUserID(Integer userId, Pageable pageable);
     java.util.List<Listing> findAllByUserUserID(Integer userId);
     Page<Listing> findByCategoryCategoryID(Integer categoryId, Pageable pageable);
     Page<Listing> findByBrandBrandID(Integer brandId, Pageable pageable);
+    @EntityGraph(Listing.CARD_GRAPH)
     Page<Listing> findByCategoryCategoryIDAndStatus(Integer categoryId, String status, Pageable pageable);
+    @EntityGraph(Listing.CARD_GRAPH)
     Page<Listing> findByBrandBrandIDAndStatus(Integer brandId, String status, Pageable pageable);
+
+    @EntityGraph(Listing.CARD_GRAPH)
+    List<Listing> findByListingIDIn(Collection<Integer> listingIds);
+
+    // Dùng cho /api/listings/search
+    @Override
+    @EntityGraph(Listing.CARD_GRAPH)
+    Page<Listing> findAll(Specification<Listing> spec, Pageable pageable);
     java.util.List<Listing> findByStatusAndExpiryDateBefore(String status, java.util.Date date);
     
     // Count titles (case-insensitive) to detect duplicate titles
@@ -30,6 +58,7 @@ public interface ListingRepository extends JpaRepository<Listing, Integer>, JpaS
 
     // Count listings created by user after a given time (for rate limiting)
     long countByUserUserIDAndCreatedAtAfter(Integer userId, java.util.Date after);
+    long countByUserUserIDAndCreatedAtAfterAndCreatedAtBefore(Integer userId, Date after, Date before);
 
     // Find all listings in a category (used for price anomaly checks)
     java.util.List<Listing> findAllByCategoryCategoryID(Integer categoryId);
@@ -45,4 +74,100 @@ public interface ListingRepository extends JpaRepository<Listing, Integer>, JpaS
     @Query("SELECT COUNT(l) FROM Listing l WHERE LOWER(l.title) = LOWER(:title) AND l.status <> 'DELETED' AND (:excludeId IS NULL OR l.listingID <> :excludeId)")
     long countByTitleAndNotDeletedAndIdNot(@Param("title") String title, @Param("excludeId") Integer excludeId);
     List<Listing> findByExpiryDateBeforeAndStatus(Date expiryDate, String status);
+
+    // Thời điểm hết hạn của các bài ACTIVE, dùng để dựng lại ListingExpiryEngine khi khởi động
+    @Query("SELECT l.listingID AS listingID, l.expiryDate AS expiryDate FROM Listing l " +
+           "WHERE l.status = 'ACTIVE' AND l.expiryDate IS NOT NULL")
+    List<ListingExpiryProjection> findActiveExpiries();
+
+    // Các cột lọc của mọi bài ACTIVE, dùng để dựng ListingCatalogSnapshot (không nạp entity)
+    @Query("SELECT l.listingID AS listingID, l.category.categoryID AS categoryID, l.brand.brandID AS brandID, " +
+           "l.user.userID AS userID, l.price AS price, v.year AS year, l.createdAt AS createdAt, " +
+           "l.expiryDate AS expiryDate " +
+           "FROM Listing l LEFT JOIN l.vehicle v WHERE l.status = 'ACTIVE' ORDER BY l.listingID")
+    List<ListingCatalogRowProjection> findActiveCatalogRows();
+
+    // Như findActiveCatalogRows nhưng chỉ cho các bài vừa thay đổi, để biết bản chụp có thật sự cần dựng lại không
+    @Query("SELECT l.listingID AS listingID, l.category.categoryID AS categoryID, l.brand.brandID AS brandID, " +
+           "l.user.userID AS userID, l.price AS price, v.year AS year, l.createdAt AS createdAt, " +
+           "l.expiryDate AS expiryDate " +
+           "FROM Listing l LEFT JOIN l.vehicle v WHERE l.status = 'ACTIVE' AND l.listingID IN :ids")
+    List<ListingCatalogRowProjection> findActiveCatalogRowsByListingIDIn(@Param("ids") Collection<Integer> ids);
+
+    // Các cột lọc (category/brand/người bán/giá/năm) của các bài vừa thay đổi, dùng để xóa đúng phần ListingSearchCache bị ảnh hưởng
+    @Query("SELECT l.listingID AS listingID, l.category.categoryID AS categoryID, l.brand.brandID AS brandID, " +
+           "l.user.userID AS userID, l.price AS price, v.year AS year " +
+           "FROM Listing l LEFT JOIN l.vehicle v WHERE l.listingID IN :ids")
+    List<ListingScopeProjection> findScopesByListingIDIn(@Param("ids") Collection<Integer> ids);
+
+    // Thời điểm đăng của các bài tạo sau since, theo thứ tự thời gian, dùng để nạp sẵn PostingRateLimiter khi khởi động
+    @Query("SELECT l.user.userID AS userID, l.createdAt AS createdAt FROM Listing l " +
+           "WHERE l.createdAt > :since ORDER BY l.createdAt")
+    List<ListingPostTimeProjection> findPostTimesSince(@Param("since") Date since);
+
+    @Query("SELECT l.listingID FROM Listing l WHERE l.status = :status ORDER BY l.listingID")
+    List<Integer> findIdsByStatus(@Param("status") String status);
+
+    // Bài ACTIVE theo từng đoạn (keyset theo listingID, kèm brand/category/vehicle), dùng để dựng ListingKeywordIndex
+    @EntityGraph(attributePaths = {"brand", "category", "vehicle"})
+    @Query("SELECT l FROM Listing l WHERE l.status = 'ACTIVE' AND l.listingID > :afterId ORDER BY l.listingID")
+    List<Listing> findActiveAfter(@Param("afterId") Integer afterId, Pageable pageable);
+
+    // title/description của các bài chưa xóa theo từng đoạn (keyset theo listingID), dùng để dựng ListingNearDuplicateIndex
+    @Query("SELECT l.listingID AS listingID, l.title AS title, l.description AS description, l.status AS status " +
+           "FROM Listing l WHERE l.status <> 'DELETED' AND l.listingID > :afterId ORDER BY l.listingID")
+    List<ListingTextProjection> findTextsNotDeleted(@Param("afterId") Integer afterId, Pageable pageable);
+
+    @Query("SELECT l.listingID AS listingID, l.title AS title, l.description AS description, l.status AS status " +
+           "FROM Listing l WHERE l.listingID IN :ids")
+    List<ListingTextProjection> findTextsByListingIDIn(@Param("ids") Collection<Integer> ids);
+
+    // Chuyển các bài đã tới hạn sang EXPIRED; điều kiện status/expiryDate giúp bỏ qua bài đã được gia hạn hoặc đổi trạng thái
+    @Modifying
+    @Transactional
+    @Query("UPDATE Listing l SET l.status = 'EXPIRED' " +
+           "WHERE l.listingID IN :ids AND l.status = 'ACTIVE' AND l.expiryDate <= :now")
+    int expireDueListings(@Param("ids") Collection<Integer> ids, @Param("now") Date now);
+
+    // Ứng viên cho hàng đợi kiểm duyệt; thứ tự do Pageable quyết định
+    @Query("SELECT l.listingID FROM Listing l WHERE l.status IN :statuses")
+    List<Integer> findIdsByStatusIn(@Param("statuses") Collection<String> statuses, Pageable pageable);
+
+    @Query("SELECT l.listingID AS listingID, l.status AS status FROM Listing l WHERE l.listingID IN :ids")
+    List<ListingStatusProjection> findStatusesByListingIDIn(@Param("ids") Collection<Integer> ids);
+
+    // Như findStatusesByListingIDIn nhưng khóa các dòng tới hết transaction (theo thứ tự listingID để tránh deadlock),
+    // để câu UPDATE hàng loạt ngay sau đó đổi đúng các bài đã đọc
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT l.listingID AS listingID, l.status AS status FROM Listing l " +
+           "WHERE l.listingID IN :ids ORDER BY l.listingID")
+    List<ListingStatusProjection> lockStatusesByListingIDIn(@Param("ids") Collection<Integer> ids);
+
+    // Duyệt/từ chối/xóa hàng loạt: một câu UPDATE cho cả lô, điều kiện status bỏ qua bài vừa bị đổi trạng thái
+    @Modifying
+    @Query("UPDATE Listing l SET l.status = 'ACTIVE', l.startDate = :startDate, l.expiryDate = :expiryDate " +
+           "WHERE l.listingID IN :ids AND l.status = 'PENDING'")
+    int approvePending(@Param("ids") Collection<Integer> ids, @Param("startDate") Date startDate,
+                       @Param("expiryDate") Date expiryDate);
+
+    @Modifying
+    @Query("UPDATE Listing l SET l.status = 'REJECTED', l.rejectionReason = COALESCE(:reason, l.rejectionReason) " +
+           "WHERE l.listingID IN :ids AND l.status = 'PENDING'")
+    int rejectPending(@Param("ids") Collection<Integer> ids, @Param("reason") String reason);
+
+    @Modifying
+    @Query("UPDATE Listing l SET l.status = 'DELETED', l.rejectionReason = :reason, l.expiryDate = :now " +
+           "WHERE l.listingID IN :ids AND l.status <> 'DELETED'")
+    int softDeleteNotDeleted(@Param("ids") Collection<Integer> ids, @Param("reason") String reason,
+                             @Param("now") Date now);
+
+    // Giữ bài cho một đơn hàng: chỉ một request đổi được ACTIVE -> PROCESSING, các request khác nhận 0 dòng
+    @Modifying
+    @Query("UPDATE Listing l SET l.status = 'PROCESSING' WHERE l.listingID = :id AND l.status = 'ACTIVE'")
+    int reserveForPurchase(@Param("id") Integer listingId);
+
+    // Lấy id bài ACTIVE đã quá hạn theo từng đoạn (keyset theo listingID) cho AutoStatusUpdater
+    @Query("SELECT l.listingID FROM Listing l WHERE l.status = 'ACTIVE' AND l.expiryDate < :now " +
+           "AND l.listingID > :afterId ORDER BY l.listingID")
+    List<Integer> findExpiredActiveIds(@Param("now") Date now, @Param("afterId") Integer afterId, Pageable pageable);
 }
@@ -0,0 +1,11 @@
+package com.evtrading.swp391.repository;
+
+import com.evtrading.swp391.entity.Listing;
+import com.evtrading.swp391.search.ListingFacetCounter;
+import org.springframework.data.jpa.domain.Specification;
+
+public interface ListingRepositoryCustom {
+
+    // Đếm facet và tổng số bài khớp spec bằng một câu SELECT (chỉ lấy các cột facet) và một lượt duyệt
+    ListingFacetCounter countFacets(Specification<Listing> spec);
+}
@@ -0,0 +1,49 @@
+package com.evtrading.swp391.repository;
+
+import com.evtrading.swp391.entity.Listing;
+import com.evtrading.swp391.search.ListingFacetCounter;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.JoinType;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+public class ListingRepositoryImpl implements ListingRepositoryCustom {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public ListingFacetCounter countFacets(Specification<Listing> spec) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = cb.createTupleQuery();
+        Root<Listing> root = query.from(Listing.class);
+        query.multiselect(
+                root.get("category").get("categoryID"),
+                root.get("brand").get("brandID"),
+                root.get("price"),
+                root.join("vehicle", JoinType.LEFT).get("year"));
+        Predicate predicate = spec.toPredicate(root, query, cb);
+        if (predicate != null) {
+            query.where(predicate);
+        }
+
+        ListingFacetCounter counter = new ListingFacetCounter();
+        try (var rows = entityManager.createQuery(query).getResultStream()) {
+            rows.forEach(row -> {
+                BigDecimal price = row.get(2, BigDecimal.class);
+                counter.add(row.get(0, Integer.class), row.get(1, Integer.class),
+                        price == null ? null : price.setScale(0, RoundingMode.HALF_UP).longValue(),
+                        row.get(3, Integer.class));
+            });
+        }
+        return counter;
+    }
+}
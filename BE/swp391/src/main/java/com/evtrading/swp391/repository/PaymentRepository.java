@@ -1,11 +1,15 @@
 package com.evtrading.swp391.repository;
 
 import com.evtrading.swp391.entity.Payment;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import com.evtrading.swp391.entity.Transaction;
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import java.util.Optional;
@@ -18,5 +22,24 @@ public interface PaymentRepository extends JpaRepository<Payment, Integer> {
     List<Payment> findAllByStatus(String status);
     List<Payment> findByStatusAndPaidAtBefore(String status, Date before);
 
-   
-}
\ No newline at end of file
+    @Query("SELECT p.paymentID FROM Payment p WHERE p.status = 'PENDING' AND p.paidAt < :deadline " +
+           "AND p.paymentID > :afterId ORDER BY p.paymentID")
+    List<Integer> findPendingIdsPaidBefore(@Param("deadline") Date deadline, @Param("afterId") Integer afterId, Pageable pageable);
+
+    // Chỉ chuyển payment còn PENDING, payment đã được thanh toán trong lúc chạy sẽ không bị ghi đè
+    @Modifying
+    @Transactional
+    @Query("UPDATE Payment p SET p.status = 'EXPIRED' " +
+           "WHERE p.paymentID IN :ids AND p.status = 'PENDING' AND p.paidAt < :deadline")
+    int expirePendingPayments(@Param("ids") Collection<Integer> ids, @Param("deadline") Date deadline);
+
+    // Chỉ payment còn PENDING mới được chuyển trạng thái, nên một kết quả VNPAY chỉ được áp dụng một lần
+    // kể cả khi callback trình duyệt và IPN tới cùng lúc
+    @Modifying
+    @Query("UPDATE Payment p SET p.status = 'PAID', p.paidAt = :paidAt WHERE p.paymentID = :id AND p.status = 'PENDING'")
+    int markPaidIfPending(@Param("id") Integer paymentId, @Param("paidAt") Date paidAt);
+
+    @Modifying
+    @Query("UPDATE Payment p SET p.status = 'FAILED' WHERE p.paymentID = :id AND p.status = 'PENDING'")
+    int markFailedIfPending(@Param("id") Integer paymentId);
+}
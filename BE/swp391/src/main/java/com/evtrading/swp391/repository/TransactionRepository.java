@@ -3,13 +3,17 @@ package com.evtrading.swp391.repository;
 import com.evtrading.swp391.entity.Transaction;
 import com.evtrading.swp391.entity.User;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.stereotype.Repository;
 import com.evtrading.swp391.entity.Order;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import java.util.Optional;
@@ -30,4 +34,25 @@ public interface TransactionRepository extends JpaRepository<Transaction, Intege
     BigDecimal sumAmountByReferenceTypeAndStatus(@Param("referenceType") String referenceType, @Param("status") String status);
 
     List<Transaction> findByReferenceType(String referenceType);
-}
\ No newline at end of file
+
+    @Query("SELECT t.transactionID FROM Transaction t WHERE t.dueTime < :now " +
+           "AND (t.status IS NULL OR t.status NOT IN ('EXPIRED', 'FULLY_PAID')) " +
+           "AND t.transactionID > :afterId ORDER BY t.transactionID")
+    List<Integer> findOverdueIds(@Param("now") Date now, @Param("afterId") Integer afterId, Pageable pageable);
+
+    // Không bao giờ chuyển transaction đã FULLY_PAID sang EXPIRED
+    @Modifying
+    @Transactional
+    @Query("UPDATE Transaction t SET t.status = 'EXPIRED' WHERE t.transactionID IN :ids AND t.dueTime < :now " +
+           "AND (t.status IS NULL OR t.status NOT IN ('EXPIRED', 'FULLY_PAID'))")
+    int expireOverdue(@Param("ids") Collection<Integer> ids, @Param("now") Date now);
+
+    // Cộng số tiền vừa trả và suy ra trạng thái trong cùng một câu UPDATE; khóa dòng giữ tới khi commit
+    // nên các payment của cùng transaction được tuần tự hóa và không mất lần cộng nào
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE Transaction t SET t.paidAmount = COALESCE(t.paidAmount, 0) + :amount, " +
+           "t.status = CASE WHEN COALESCE(t.paidAmount, 0) + :amount >= t.totalAmount " +
+           "THEN 'FULLY_PAID' ELSE 'PARTIALLY_PAID' END " +
+           "WHERE t.transactionID = :id")
+    int addPaidAmount(@Param("id") Integer transactionId, @Param("amount") BigDecimal amount);
+}
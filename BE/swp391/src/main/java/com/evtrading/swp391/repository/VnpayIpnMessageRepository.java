@@ -0,0 +1,26 @@
+package com.evtrading.swp391.repository;
+
+import com.evtrading.swp391.entity.VnpayIpnMessage;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import java.util.Date;
+import java.util.List;
+
+@Repository
+public interface VnpayIpnMessageRepository extends JpaRepository<VnpayIpnMessage, Long> {
+    boolean existsByTxnRef(String txnRef);
+
+    long countByStatus(String status);
+
+    // IPN cũ hơn của cùng transaction còn chưa xử lý xong
+    boolean existsByTransactionIdAndStatusAndMessageIDLessThan(Integer transactionId, String status, Long messageID);
+
+    @Query("SELECT m FROM VnpayIpnMessage m WHERE m.status = 'PENDING' AND m.nextAttemptAt <= :now ORDER BY m.messageID")
+    List<VnpayIpnMessage> findDue(@Param("now") Date now, Pageable pageable);
+
+    @Query("SELECT MIN(m.receivedAt) FROM VnpayIpnMessage m WHERE m.status = 'PENDING'")
+    Date findOldestPendingReceivedAt();
+}
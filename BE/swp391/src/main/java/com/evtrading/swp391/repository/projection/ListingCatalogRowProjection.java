@@ -0,0 +1,15 @@
+package com.evtrading.swp391.repository.projection;
+
+import java.math.BigDecimal;
+import java.util.Date;
+
+public interface ListingCatalogRowProjection {
+    Integer getListingID();
+    Integer getCategoryID();
+    Integer getBrandID();
+    Integer getUserID();
+    BigDecimal getPrice();
+    Integer getYear();
+    Date getCreatedAt();
+    Date getExpiryDate();
+}
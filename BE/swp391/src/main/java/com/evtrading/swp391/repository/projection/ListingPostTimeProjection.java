@@ -0,0 +1,8 @@
+package com.evtrading.swp391.repository.projection;
+
+import java.util.Date;
+
+public interface ListingPostTimeProjection {
+    Integer getUserID();
+    Date getCreatedAt();
+}
@@ -0,0 +1,12 @@
+package com.evtrading.swp391.repository.projection;
+
+import java.math.BigDecimal;
+
+public interface ListingScopeProjection {
+    Integer getListingID();
+    Integer getCategoryID();
+    Integer getBrandID();
+    Integer getUserID();
+    BigDecimal getPrice();
+    Integer getYear();
+}
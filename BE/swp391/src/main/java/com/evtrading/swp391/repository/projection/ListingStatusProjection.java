@@ -0,0 +1,6 @@
+package com.evtrading.swp391.repository.projection;
+
+public interface ListingStatusProjection {
+    Integer getListingID();
+    String getStatus();
+}
@@ -0,0 +1,8 @@
+package com.evtrading.swp391.repository.projection;
+
+public interface ListingTextProjection {
+    Integer getListingID();
+    String getTitle();
+    String getDescription();
+    String getStatus();
+}
@@ -0,0 +1,448 @@
+package com.evtrading.swp391.search;
+
+import com.evtrading.swp391.dto.ListingFacetsDTO;
+import com.evtrading.swp391.dto.ListingSearchCriteria;
+import com.evtrading.swp391.event.ListingCatalogRebuiltEvent;
+import com.evtrading.swp391.event.ListingChangedEvent;
+import com.evtrading.swp391.repository.ListingRepository;
+import com.evtrading.swp391.repository.projection.ListingCatalogRowProjection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+/**
+ * Bản chụp dạng cột (mảng nguyên thủy) các bài đăng ACTIVE để trả lời bộ lọc có cấu trúc của /search
+ * mà không cần chạy câu WHERE trên DB.
+ *
+ * Mỗi điều kiện (category, brand, user, khoảng giá, khoảng năm, chưa hết hạn) là một lần quét một cột
+ * và AND vào một bitset; thứ tự trang lấy từ các hoán vị đã sắp sẵn theo createdAt/price. Kết quả chỉ là
+ * danh sách listingID của trang cần trả về, DB chỉ dùng để nạp entity của trang đó.
+ *
+ * Các cột bất biến và được thay nguyên khối. Với mỗi ListingChangedEvent, các bài thay đổi được đọc lại
+ * và so với bản chụp: chỉ khi tập bài ACTIVE hoặc một cột lọc thật sự đổi thì bản chụp mới bị đánh dấu
+ * "bẩn" (tạo bài PENDING_SCAN, kết quả quét, từ chối... không làm bẩn). Lần dựng lại chạy theo lịch ngắn
+ * để gộp nhiều thay đổi; trong lúc chờ và lúc dựng, query() vẫn dùng bản chụp cũ, chỉ loại ngay các bài
+ * đã rời ACTIVE. Bài mới ACTIVE hoặc vừa sửa cột lọc xuất hiện sau lần dựng kế tiếp (vài giây); khi dựng
+ * xong, ListingCatalogRebuiltEvent được phát với các bài đó để cache kết quả xóa các mục đã nạp từ cột cũ.
+ */
+@Component
+public class ListingCatalogSnapshot {
+
+    private static final Logger logger = LoggerFactory.getLogger(ListingCatalogSnapshot.class);
+
+    // Năm sản xuất không có (bài không gắn vehicle)
+    private static final short NO_YEAR = Short.MIN_VALUE;
+    // Giá null: không khớp khi có lọc giá và không được đếm vào khoảng giá nào
+    private static final long NO_PRICE = Long.MIN_VALUE;
+    // expiryDate null = không hết hạn
+    private static final long NO_EXPIRY = Long.MAX_VALUE;
+
+    private final ListingRepository listingRepository;
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    private volatile Columns columns;
+    private volatile boolean dirty = true;
+    // Các bài làm bản chụp bẩn kể từ lần dựng trước, phát kèm ListingCatalogRebuiltEvent
+    private final Set<Integer> pendingChanges = ConcurrentHashMap.newKeySet();
+
+    public ListingCatalogSnapshot(ListingRepository listingRepository, ApplicationEventPublisher eventPublisher) {
+        this.listingRepository = listingRepository;
+        this.eventPublisher = eventPublisher;
+    }
+
+    /**
+     * Một trang kết quả: listingID theo đúng thứ tự hiển thị, tổng số bài khớp
+     * và facet counts (null nếu không yêu cầu) tính trên cùng tập bài khớp.
+     */
+    public record CatalogPage(List<Integer> listingIds, long total, ListingFacetsDTO facets) {
+    }
+
+    public boolean isReady() {
+        return columns != null;
+    }
+
+    public int size() {
+        Columns current = columns;
+        return current == null ? 0 : current.ids.length;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        rebuild();
+    }
+
+    // Chạy trước ListingSearchCache để bài vừa rời ACTIVE đã bị loại khi cache nạp lại
+    @TransactionalEventListener(fallbackExecution = true)
+    @Order(0)
+    public void onListingChanged(ListingChangedEvent event) {
+        Columns current = columns;
+        if (current == null) {
+            dirty = true;
+            return;
+        }
+        Map<Integer, ListingCatalogRowProjection> activeRows = new HashMap<>();
+        for (ListingCatalogRowProjection row : listingRepository.findActiveCatalogRowsByListingIDIn(event.getListingIds())) {
+            activeRows.put(row.getListingID(), row);
+        }
+        List<Integer> changed = new ArrayList<>();
+        for (Integer id : event.getListingIds()) {
+            int row = Arrays.binarySearch(current.ids, id);
+            ListingCatalogRowProjection active = activeRows.get(id);
+            if (row < 0 && active == null) {
+                // Không ACTIVE cả trước lẫn sau (bài chờ quét, chờ duyệt, bị từ chối...)
+                continue;
+            }
+            if (active == null) {
+                current.departed.add(id);
+                changed.add(id);
+            } else if (row < 0 || !current.sameRow(row, active)) {
+                changed.add(id);
+            }
+        }
+        if (!changed.isEmpty()) {
+            // Ghi id trước khi bật cờ để lần dựng nào thấy cờ cũng thấy id
+            pendingChanges.addAll(changed);
+            dirty = true;
+        }
+    }
+
+    // Gộp các thay đổi trong 2 giây thành một lần dựng lại; cũng thử lại nếu lần dựng khi khởi động thất bại
+    @Scheduled(fixedDelay = 2000, initialDelay = 2000)
+    public void refreshIfDirty() {
+        if (dirty || columns == null) {
+            rebuild();
+        }
+    }
+
+    void rebuild() {
+        List<Integer> applied;
+        synchronized (this) {
+            // Hạ cờ và lấy các id trước khi đọc: thay đổi xảy ra trong lúc nạp sẽ bật lại cờ và được dựng ở lượt sau.
+            // Trong lúc nạp, query() tiếp tục dùng các cột cũ
+            dirty = false;
+            applied = new ArrayList<>(pendingChanges);
+            pendingChanges.removeAll(applied);
+            try {
+                columns = Columns.load(listingRepository.findActiveCatalogRows());
+                logger.debug("Listing catalog snapshot rebuilt: {} listings", columns.ids.length);
+            } catch (RuntimeException e) {
+                pendingChanges.addAll(applied);
+                dirty = true;
+                logger.error("Failed to rebuild listing catalog snapshot", e);
+                return;
+            }
+        }
+        if (!applied.isEmpty()) {
+            eventPublisher.publishEvent(new ListingCatalogRebuiltEvent(applied));
+        }
+    }
+
+    /**
+     * Trả lời bộ lọc của người dùng thường (chỉ bài ACTIVE chưa hết hạn) từ bản chụp.
+     * Trả về null khi không thể phục vụ: bản chụp chưa dựng xong lần đầu hoặc kiểu sort không hỗ trợ.
+     *
+     * @param keywordCandidates tập listingID khớp keyword (null = không lọc theo keyword)
+     * @param withFacets        có đếm facet trên tập bài khớp hay không
+     */
+    public CatalogPage query(ListingSearchCriteria c, Collection<Integer> keywordCandidates, Pageable pageable,
+                             boolean withFacets) {
+        Columns current = columns;
+        if (current == null) {
+            return null;
+        }
+        int[] order = current.orderFor(pageable.getSort());
+        boolean descending = isDescending(pageable.getSort());
+        if (order == null) {
+            return null;
+        }
+
+        long[] bits = current.match(c, keywordCandidates, System.currentTimeMillis());
+        long total = 0;
+        for (long word : bits) {
+            total += Long.bitCount(word);
+        }
+
+        long skip = pageable.getOffset();
+        int limit = pageable.getPageSize();
+        List<Integer> pageIds = new ArrayList<>(Math.min(limit, (int) Math.min(total, Integer.MAX_VALUE)));
+        int n = current.ids.length;
+        for (int k = 0; k < n && pageIds.size() < limit && skip < total; k++) {
+            int row = order[descending ? n - 1 - k : k];
+            if ((bits[row >>> 6] & (1L << row)) == 0) {
+                continue;
+            }
+            if (skip > 0) {
+                skip--;
+                continue;
+            }
+            pageIds.add(current.ids[row]);
+        }
+        return new CatalogPage(pageIds, total, withFacets ? current.facets(bits) : null);
+    }
+
+    private static boolean isDescending(Sort sort) {
+        Sort.Order o = sort.stream().findFirst().orElse(null);
+        return o != null && o.isDescending();
+    }
+
+    /**
+     * Dữ liệu các cột, dòng i của mọi mảng là cùng một bài đăng; ids tăng dần.
+     */
+    private static final class Columns {
+        final int[] ids;
+        final int[] category;
+        final int[] brand;
+        final int[] user;
+        final long[] price;
+        final short[] year;
+        final long[] createdAt;
+        final long[] expiry;
+        // Hoán vị chỉ số dòng theo createdAt/price tăng dần (khóa phụ listingID)
+        final int[] byCreatedAt;
+        final int[] byPrice;
+        final int[] byId;
+        // listingID đã rời ACTIVE sau khi các cột được dựng; bị loại khỏi kết quả cho tới lần dựng sau
+        final Set<Integer> departed = ConcurrentHashMap.newKeySet();
+
+        private Columns(int n) {
+            ids = new int[n];
+            category = new int[n];
+            brand = new int[n];
+            user = new int[n];
+            price = new long[n];
+            year = new short[n];
+            createdAt = new long[n];
+            expiry = new long[n];
+            byId = IntStream.range(0, n).toArray();
+            byCreatedAt = new int[n];
+            byPrice = new int[n];
+        }
+
+        static Columns load(List<ListingCatalogRowProjection> rows) {
+            Columns c = new Columns(rows.size());
+            for (int i = 0; i < rows.size(); i++) {
+                ListingCatalogRowProjection r = rows.get(i);
+                c.ids[i] = r.getListingID();
+                c.category[i] = r.getCategoryID();
+                c.brand[i] = r.getBrandID();
+                c.user[i] = r.getUserID();
+                c.price[i] = toVnd(r.getPrice());
+                c.year[i] = r.getYear() == null ? NO_YEAR : r.getYear().shortValue();
+                c.createdAt[i] = r.getCreatedAt() == null ? Long.MIN_VALUE : r.getCreatedAt().getTime();
+                c.expiry[i] = r.getExpiryDate() == null ? NO_EXPIRY : r.getExpiryDate().getTime();
+            }
+            // Dòng đã theo listingID tăng dần nên sort ổn định giữ listingID làm khóa phụ
+            sortRowsBy(c.byCreatedAt, c.createdAt);
+            sortRowsBy(c.byPrice, c.price);
+            return c;
+        }
+
+        boolean sameRow(int row, ListingCatalogRowProjection r) {
+            return category[row] == r.getCategoryID()
+                    && brand[row] == r.getBrandID()
+                    && user[row] == r.getUserID()
+                    && price[row] == toVnd(r.getPrice())
+                    && year[row] == (r.getYear() == null ? NO_YEAR : r.getYear().shortValue())
+                    && createdAt[row] == (r.getCreatedAt() == null ? Long.MIN_VALUE : r.getCreatedAt().getTime())
+                    && expiry[row] == (r.getExpiryDate() == null ? NO_EXPIRY : r.getExpiryDate().getTime());
+        }
+
+        // Merge sort ổn định trên int[] theo khóa long, tránh mảng Integer[] và comparator boxing
+        private static void sortRowsBy(int[] target, long[] key) {
+            int n = target.length;
+            int[] src = IntStream.range(0, n).toArray();
+            int[] dst = new int[n];
+            for (int width = 1; width < n; width <<= 1) {
+                for (int lo = 0; lo < n; lo += width << 1) {
+                    int mid = Math.min(lo + width, n);
+                    int hi = Math.min(lo + (width << 1), n);
+                    int i = lo, j = mid, k = lo;
+                    while (i < mid && j < hi) {
+                        dst[k++] = key[src[j]] < key[src[i]] ? src[j++] : src[i++];
+                    }
+                    while (i < mid) {
+                        dst[k++] = src[i++];
+                    }
+                    while (j < hi) {
+                        dst[k++] = src[j++];
+                    }
+                }
+                int[] swap = src;
+                src = dst;
+                dst = swap;
+            }
+            System.arraycopy(src, 0, target, 0, n);
+        }
+
+        // Một lượt qua các bit đã bật của tập kết quả, đếm mọi facet cùng lúc
+        ListingFacetsDTO facets(long[] bits) {
+            ListingFacetCounter counter = new ListingFacetCounter();
+            for (int w = 0; w < bits.length; w++) {
+                long word = bits[w];
+                while (word != 0) {
+                    int row = (w << 6) + Long.numberOfTrailingZeros(word);
+                    word &= word - 1;
+                    counter.add(category[row], brand[row], price[row] == NO_PRICE ? null : price[row],
+                            year[row] == NO_YEAR ? null : (int) year[row]);
+                }
+            }
+            return counter.toDto();
+        }
+
+        int[] orderFor(Sort sort) {
+            List<Sort.Order> orders = sort.toList();
+            if (orders.isEmpty()) {
+                return byId;
+            }
+            if (orders.size() > 1) {
+                return null;
+            }
+            return switch (orders.get(0).getProperty()) {
+                case "createdAt" -> byCreatedAt;
+                case "price" -> byPrice;
+                case "listingID" -> byId;
+                default -> null;
+            };
+        }
+
+        long[] match(ListingSearchCriteria c, Collection<Integer> keywordCandidates, long now) {
+            int n = ids.length;
+            long[] bits = new long[(n + 63) >>> 6];
+            if (keywordCandidates != null) {
+                for (Integer id : keywordCandidates) {
+                    int row = Arrays.binarySearch(ids, id);
+                    if (row >= 0) {
+                        bits[row >>> 6] |= 1L << row;
+                    }
+                }
+            } else {
+                Arrays.fill(bits, -1L);
+                if ((n & 63) != 0) {
+                    bits[bits.length - 1] = (1L << n) - 1;
+                }
+            }
+
+            for (Integer id : departed) {
+                int row = Arrays.binarySearch(ids, id);
+                if (row >= 0) {
+                    bits[row >>> 6] &= ~(1L << row);
+                }
+            }
+            andNotBefore(bits, expiry, now);
+            if (c.getCategoryId() != null) {
+                andEquals(bits, category, c.getCategoryId());
+            }
+            if (c.getBrandId() != null) {
+                andEquals(bits, brand, c.getBrandId());
+            }
+            if (c.getUserId() != null) {
+                andEquals(bits, user, c.getUserId());
+            }
+            if (c.getMinPrice() != null || c.getMaxPrice() != null) {
+                long min = c.getMinPrice() == null ? NO_PRICE + 1
+                        : Math.max(toBound(c.getMinPrice(), RoundingMode.CEILING), NO_PRICE + 1);
+                long max = c.getMaxPrice() == null ? Long.MAX_VALUE : toBound(c.getMaxPrice(), RoundingMode.FLOOR);
+                andBetween(bits, price, min, max);
+            }
+            if (c.getMinYear() != null || c.getMaxYear() != null) {
+                int min = c.getMinYear() == null ? NO_YEAR + 1 : Math.max(c.getMinYear(), NO_YEAR + 1);
+                int max = c.getMaxYear() == null ? Short.MAX_VALUE : c.getMaxYear();
+                andYearBetween(bits, min, max);
+            }
+            return bits;
+        }
+
+        // Các vòng quét dưới đây không rẽ nhánh theo từng dòng để JIT có thể vector hóa
+
+        private void andEquals(long[] bits, int[] column, int value) {
+            int n = column.length;
+            for (int w = 0; w < bits.length; w++) {
+                if (bits[w] == 0) {
+                    continue;
+                }
+                long mask = 0;
+                int base = w << 6;
+                int end = Math.min(64, n - base);
+                for (int b = 0; b < end; b++) {
+                    mask |= (column[base + b] == value ? 1L : 0L) << b;
+                }
+                bits[w] &= mask;
+            }
+        }
+
+        private static void andBetween(long[] bits, long[] column, long min, long max) {
+            int n = column.length;
+            for (int w = 0; w < bits.length; w++) {
+                if (bits[w] == 0) {
+                    continue;
+                }
+                long mask = 0;
+                int base = w << 6;
+                int end = Math.min(64, n - base);
+                for (int b = 0; b < end; b++) {
+                    long v = column[base + b];
+                    mask |= (v >= min & v <= max ? 1L : 0L) << b;
+                }
+                bits[w] &= mask;
+            }
+        }
+
+        private void andYearBetween(long[] bits, int min, int max) {
+            int n = year.length;
+            for (int w = 0; w < bits.length; w++) {
+                if (bits[w] == 0) {
+                    continue;
+                }
+                long mask = 0;
+                int base = w << 6;
+                int end = Math.min(64, n - base);
+                for (int b = 0; b < end; b++) {
+                    int v = year[base + b];
+                    mask |= (v >= min & v <= max ? 1L : 0L) << b;
+                }
+                bits[w] &= mask;
+            }
+        }
+
+        private static void andNotBefore(long[] bits, long[] column, long now) {
+            andBetween(bits, column, now, Long.MAX_VALUE);
+        }
+
+        private static long toBound(BigDecimal value, RoundingMode mode) {
+            BigDecimal rounded = value.setScale(0, mode);
+            if (rounded.compareTo(BigDecimal.valueOf(Long.MAX_VALUE)) > 0) {
+                return Long.MAX_VALUE;
+            }
+            if (rounded.compareTo(BigDecimal.valueOf(Long.MIN_VALUE)) < 0) {
+                return Long.MIN_VALUE;
+            }
+            return rounded.longValue();
+        }
+
+        private static long toVnd(BigDecimal price) {
+            // VND không có đơn vị lẻ
+            return price == null ? NO_PRICE : price.setScale(0, RoundingMode.HALF_UP).longValue();
+        }
+    }
+}
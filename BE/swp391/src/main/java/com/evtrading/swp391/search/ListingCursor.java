@@ -0,0 +1,126 @@
+package com.evtrading.swp391.search;
+
+import com.evtrading.swp391.entity.Listing;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Date;
+import java.util.Set;
+
+/**
+ * Mã hóa/giải mã cursor cho phân trang keyset của /api/listings/search/cursor.
+ *
+ * Cursor là chuỗi base64url của "v1|sortBy|direction|giá trị sort|listingID" của phần tử cuối trang trước.
+ * Client chỉ cần truyền lại nguyên chuỗi; cursor chỉ hợp lệ với đúng sortBy/direction đã tạo ra nó.
+ *
+ * createdAt và price có thể null: các bài có giá trị null đứng sau cùng (nulls last) theo cả hai chiều,
+ * giữa chúng sắp theo listingID; giá trị null được mã hóa là chuỗi rỗng.
+ */
+public final class ListingCursor {
+
+    private static final String VERSION = "v1";
+    private static final String ID_PROPERTY = "listingID";
+    private static final Set<String> SORTABLE = Set.of("createdAt", "price", ID_PROPERTY);
+
+    private ListingCursor() {
+        // Utility class
+    }
+
+    /**
+     * Vị trí phần tử cuối trang trước: giá trị sort (null nếu cột null hoặc sort theo listingID) và listingID.
+     */
+    public record Position(Comparable<?> value, Integer listingId) {
+    }
+
+    public static boolean isSortable(String sortBy) {
+        return SORTABLE.contains(sortBy);
+    }
+
+    /**
+     * Sort theo cột được chọn (null đứng cuối), thêm listingID làm khóa phụ để thứ tự là duy nhất.
+     */
+    public static Sort sort(String sortBy, Sort.Direction direction) {
+        if (!isSortable(sortBy)) {
+            throw new IllegalArgumentException("Unsupported sort for cursor paging: " + sortBy);
+        }
+        if (ID_PROPERTY.equals(sortBy)) {
+            return Sort.by(direction, ID_PROPERTY);
+        }
+        return Sort.by(new Sort.Order(direction, sortBy).nullsLast()).and(Sort.by(direction, ID_PROPERTY));
+    }
+
+    /**
+     * Điều kiện "đứng sau position" theo đúng thứ tự của sort(sortBy, direction); position null là trang đầu.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public static Specification<Listing> after(Position position, String sortBy, Sort.Direction direction) {
+        return (root, q, cb) -> {
+            if (position == null) {
+                return cb.conjunction();
+            }
+            boolean asc = direction.isAscending();
+            Path<Integer> id = root.get(ID_PROPERTY);
+            Predicate idAfter = asc ? cb.greaterThan(id, position.listingId()) : cb.lessThan(id, position.listingId());
+            if (ID_PROPERTY.equals(sortBy)) {
+                return idAfter;
+            }
+            Path<Comparable> key = root.get(sortBy);
+            if (position.value() == null) {
+                // Đang ở đoạn null cuối danh sách
+                return cb.and(cb.isNull(key), idAfter);
+            }
+            Comparable value = position.value();
+            return cb.or(
+                    asc ? cb.greaterThan(key, value) : cb.lessThan(key, value),
+                    cb.and(cb.equal(key, value), idAfter),
+                    cb.isNull(key));
+        };
+    }
+
+    public static Position decode(String cursor, String sortBy, Sort.Direction direction) {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+        String[] parts;
+        try {
+            parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("\\|", -1);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Malformed cursor", e);
+        }
+        if (parts.length != 5 || !VERSION.equals(parts[0])) {
+            throw new IllegalArgumentException("Malformed cursor");
+        }
+        if (!parts[1].equals(sortBy) || !parts[2].equals(direction.name())) {
+            throw new IllegalArgumentException("Cursor does not match the requested sort");
+        }
+        try {
+            Comparable<?> value = ID_PROPERTY.equals(sortBy) || parts[3].isEmpty() ? null : parseValue(sortBy, parts[3]);
+            return new Position(value, Integer.valueOf(parts[4]));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Malformed cursor", e);
+        }
+    }
+
+    public static String encode(Listing last, String sortBy, Sort.Direction direction) {
+        String value = switch (sortBy) {
+            case "createdAt" -> last.getCreatedAt() == null ? "" : String.valueOf(last.getCreatedAt().getTime());
+            case "price" -> last.getPrice() == null ? "" : last.getPrice().toPlainString();
+            default -> "";
+        };
+        String raw = String.join("|", VERSION, sortBy, direction.name(), value, String.valueOf(last.getListingID()));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Comparable<?> parseValue(String sortBy, String value) {
+        return switch (sortBy) {
+            case "createdAt" -> new Date(Long.parseLong(value));
+            case "price" -> new BigDecimal(value);
+            default -> throw new IllegalArgumentException("Unsupported sort for cursor paging: " + sortBy);
+        };
+    }
+}
@@ -0,0 +1,93 @@
+package com.evtrading.swp391.search;
+
+import com.evtrading.swp391.dto.ListingResponseDTO;
+import com.evtrading.swp391.event.ListingChangedEvent;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.function.Function;
+
+/**
+ * Cache đọc xuyên cho GET /api/listings/{id}, lưu ListingResponseDTO dưới dạng JSON đã serialize.
+ *
+ * Nhiều request trùng id khi cache trống chỉ gây ra một lần nạp (Caffeine chặn theo khóa trong lúc nạp).
+ * Mỗi lần hit trả về một bản DTO mới được đọc từ JSON nên bên gọi có thể sửa mà không ảnh hưởng cache.
+ * Mục bị xóa khi có ListingChangedEvent (duyệt, từ chối, cập nhật, gia hạn, xóa, bán, hết hạn, review)
+ * và không sống quá expiryDate của bài để trạng thái EXPIRED hiển thị đúng lúc.
+ */
+@Component
+public class ListingDetailCache {
+
+    private static final long MAX_ENTRIES = 10_000;
+    private static final Duration TTL = Duration.ofMinutes(10);
+
+    private final ObjectMapper objectMapper;
+    private final Cache<Integer, Entry> cache;
+
+    public ListingDetailCache(ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        this.objectMapper = objectMapper;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(MAX_ENTRIES)
+                .expireAfter(new UntilListingExpiry())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "listing.detail");
+    }
+
+    public ListingResponseDTO get(Integer listingId, Function<Integer, ListingResponseDTO> loader) {
+        Entry entry = cache.get(listingId, id -> serialize(loader.apply(id)));
+        try {
+            return objectMapper.readValue(entry.json(), ListingResponseDTO.class);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onListingChanged(ListingChangedEvent event) {
+        cache.invalidateAll(event.getListingIds());
+    }
+
+    private Entry serialize(ListingResponseDTO dto) {
+        try {
+            long expiresAt = "ACTIVE".equalsIgnoreCase(dto.getStatus()) && dto.getExpiryDate() != null
+                    ? dto.getExpiryDate().getTime()
+                    : Long.MAX_VALUE;
+            return new Entry(objectMapper.writeValueAsBytes(dto), expiresAt);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot serialize listing " + dto.getId(), e);
+        }
+    }
+
+    private record Entry(byte[] json, long activeUntilMillis) {
+    }
+
+    // TTL mặc định, rút ngắn tới expiryDate với bài đang ACTIVE
+    private static final class UntilListingExpiry implements Expiry<Integer, Entry> {
+        @Override
+        public long expireAfterCreate(Integer key, Entry value, long currentTime) {
+            long untilExpiryMillis = Math.max(0, value.activeUntilMillis() - System.currentTimeMillis());
+            return untilExpiryMillis >= TTL.toMillis() ? TTL.toNanos() : untilExpiryMillis * 1_000_000L;
+        }
+
+        @Override
+        public long expireAfterUpdate(Integer key, Entry value, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(Integer key, Entry value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
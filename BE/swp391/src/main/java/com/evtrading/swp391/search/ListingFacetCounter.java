@@ -0,0 +1,68 @@
+package com.evtrading.swp391.search;
+
+import com.evtrading.swp391.dto.ListingFacetsDTO;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Bộ đếm facet một lượt: mỗi bài khớp được add() một lần, mọi facet được đếm cùng lúc.
+ * Dùng chung cho ListingCatalogSnapshot và đường DB để định nghĩa khoảng giá luôn giống nhau.
+ */
+public class ListingFacetCounter {
+
+    // Mốc khoảng giá (VND): [0, 50tr), [50tr, 200tr), [200tr, 500tr), [500tr, 1 tỷ), [1 tỷ, ...)
+    private static final long[] PRICE_BOUNDS = {50_000_000L, 200_000_000L, 500_000_000L, 1_000_000_000L};
+
+    private final Map<Integer, Long> categories = new HashMap<>();
+    private final Map<Integer, Long> brands = new HashMap<>();
+    private final long[] priceCounts = new long[PRICE_BOUNDS.length + 1];
+    private final Map<Integer, Long> years = new TreeMap<>();
+    private long total;
+
+    // priceVnd/year null: bài vẫn được đếm vào tổng, category và brand nhưng không vào khoảng giá/năm nào
+    public void add(int categoryId, int brandId, Long priceVnd, Integer year) {
+        total++;
+        categories.merge(categoryId, 1L, Long::sum);
+        brands.merge(brandId, 1L, Long::sum);
+        if (priceVnd != null) {
+            priceCounts[priceBucket(priceVnd)]++;
+        }
+        if (year != null) {
+            years.merge(year, 1L, Long::sum);
+        }
+    }
+
+    // Số bài đã add(), dùng làm totalElements để tổng và facet luôn được đếm trên cùng một tập
+    public long total() {
+        return total;
+    }
+
+    public ListingFacetsDTO toDto() {
+        Map<String, Long> priceRanges = new LinkedHashMap<>();
+        for (int i = 0; i < priceCounts.length; i++) {
+            priceRanges.put(priceLabel(i), priceCounts[i]);
+        }
+        ListingFacetsDTO dto = new ListingFacetsDTO();
+        dto.setCategories(categories);
+        dto.setBrands(brands);
+        dto.setPriceRanges(priceRanges);
+        dto.setYears(years);
+        return dto;
+    }
+
+    private static int priceBucket(long priceVnd) {
+        int bucket = 0;
+        while (bucket < PRICE_BOUNDS.length && priceVnd >= PRICE_BOUNDS[bucket]) {
+            bucket++;
+        }
+        return bucket;
+    }
+
+    private static String priceLabel(int bucket) {
+        long from = bucket == 0 ? 0 : PRICE_BOUNDS[bucket - 1];
+        return bucket == PRICE_BOUNDS.length ? from + "+" : from + "-" + PRICE_BOUNDS[bucket];
+    }
+}
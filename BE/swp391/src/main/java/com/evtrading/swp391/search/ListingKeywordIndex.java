@@ -0,0 +1,168 @@
+package com.evtrading.swp391.search;
+
+import com.evtrading.swp391.entity.Listing;
+import com.evtrading.swp391.event.ListingChangedEvent;
+import com.evtrading.swp391.repository.ListingRepository;
+import com.evtrading.swp391.util.TextNormalizer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Chỉ mục ngược (token -> listingID) trong bộ nhớ cho các bài đăng ACTIVE.
+ *
+ * Văn bản được bỏ dấu và tách từ từ title, description, brand, category và model xe.
+ * Từ khóa tìm kiếm khớp theo tiền tố của từng từ ("vin" khớp "vinfast") và các từ được AND với nhau.
+ * Chỉ mục được dựng khi khởi động và cập nhật theo ListingChangedEvent.
+ */
+@Component
+public class ListingKeywordIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(ListingKeywordIndex.class);
+    private static final int LOAD_PAGE_SIZE = 1000;
+
+    private final ListingRepository listingRepository;
+
+    private final ConcurrentSkipListMap<String, Set<Integer>> postings = new ConcurrentSkipListMap<>();
+    private final ConcurrentHashMap<Integer, Set<String>> tokensByListing = new ConcurrentHashMap<>();
+    private volatile boolean ready = false;
+    // Bài thay đổi trong lúc rebuild(): một trang nạp trước đó có thể ghi đè bản mới bằng dòng cũ, nên được nạp lại sau khi dựng xong
+    private final Set<Integer> changedDuringRebuild = ConcurrentHashMap.newKeySet();
+
+    public ListingKeywordIndex(ListingRepository listingRepository) {
+        this.listingRepository = listingRepository;
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public int size() {
+        return tokensByListing.size();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        // Keyset theo listingID thay cho OFFSET: bài đổi trạng thái trong lúc dựng không làm lệch các trang sau
+        int afterId = 0;
+        List<Listing> batch;
+        do {
+            batch = listingRepository.findActiveAfter(afterId, PageRequest.of(0, LOAD_PAGE_SIZE));
+            for (Listing listing : batch) {
+                index(listing);
+                afterId = listing.getListingID();
+            }
+        } while (batch.size() == LOAD_PAGE_SIZE);
+        ready = true;
+        // Thay đổi đến sau khi bật ready tự áp dụng ngay; các id ghi trước đó được đọc lại từ DB
+        Set<Integer> replay = new HashSet<>(changedDuringRebuild);
+        changedDuringRebuild.removeAll(replay);
+        if (!replay.isEmpty()) {
+            apply(replay);
+        }
+        logger.info("Listing keyword index built: {} listings, {} tokens", tokensByListing.size(), postings.size());
+    }
+
+    // Cập nhật trước ListingSearchCache để cache không nạp lại kết quả cũ
+    @TransactionalEventListener(fallbackExecution = true)
+    @Order(0)
+    public void onListingChanged(ListingChangedEvent event) {
+        if (!ready) {
+            changedDuringRebuild.addAll(event.getListingIds());
+        }
+        apply(event.getListingIds());
+    }
+
+    // Đọc lại các bài từ DB: bài ACTIVE được đánh chỉ mục lại, bài khác hoặc đã mất thì bị gỡ
+    private void apply(Set<Integer> listingIds) {
+        Set<Integer> remaining = new HashSet<>(listingIds);
+        for (Listing listing : listingRepository.findByListingIDIn(listingIds)) {
+            remaining.remove(listing.getListingID());
+            if ("ACTIVE".equals(listing.getStatus())) {
+                index(listing);
+            } else {
+                remove(listing.getListingID());
+            }
+        }
+        remaining.forEach(this::remove);
+    }
+
+    /**
+     * Trả về tập listingID khớp với mọi từ trong keyword. Keyword không có từ nào (ví dụ "!!!")
+     * cho tập rỗng chứ không phải "bỏ lọc", để bản chụp và nhánh DB cùng trả về trang rỗng.
+     */
+    public Set<Integer> search(String keyword) {
+        List<String> terms = TextNormalizer.tokenize(keyword);
+        if (terms.isEmpty()) {
+            return new HashSet<>();
+        }
+        Set<Integer> result = null;
+        for (String term : terms) {
+            Set<Integer> matches = new HashSet<>();
+            NavigableMap<String, Set<Integer>> range = postings.subMap(term, true, term + Character.MAX_VALUE, false);
+            range.values().forEach(matches::addAll);
+            if (result == null) {
+                result = matches;
+            } else {
+                result.retainAll(matches);
+            }
+            if (result.isEmpty()) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    void index(Listing listing) {
+        Set<String> tokens = new HashSet<>();
+        tokens.addAll(TextNormalizer.tokenize(listing.getTitle()));
+        tokens.addAll(TextNormalizer.tokenize(listing.getDescription()));
+        if (listing.getBrand() != null) {
+            tokens.addAll(TextNormalizer.tokenize(listing.getBrand().getBrandName()));
+        }
+        if (listing.getCategory() != null) {
+            tokens.addAll(TextNormalizer.tokenize(listing.getCategory().getCategoryName()));
+        }
+        if (listing.getVehicle() != null) {
+            tokens.addAll(TextNormalizer.tokenize(listing.getVehicle().getModel()));
+        }
+        Integer id = listing.getListingID();
+        synchronized (this) {
+            Set<String> previous = tokensByListing.put(id, tokens);
+            if (previous != null) {
+                previous.stream().filter(t -> !tokens.contains(t)).forEach(t -> unlink(t, id));
+            }
+            tokens.forEach(t -> postings.computeIfAbsent(t, k -> ConcurrentHashMap.newKeySet()).add(id));
+        }
+    }
+
+    synchronized void remove(Integer listingId) {
+        Set<String> previous = tokensByListing.remove(listingId);
+        if (previous != null) {
+            previous.forEach(t -> unlink(t, listingId));
+        }
+    }
+
+    // Gọi trong khối synchronized: ghi được tuần tự hóa, đọc (search) không cần khóa
+    private void unlink(String token, Integer listingId) {
+        Set<Integer> ids = postings.get(token);
+        if (ids != null) {
+            ids.remove(listingId);
+            if (ids.isEmpty()) {
+                postings.remove(token);
+            }
+        }
+    }
+}
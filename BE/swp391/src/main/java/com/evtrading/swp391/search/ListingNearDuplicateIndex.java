@@ -0,0 +1,132 @@
+package com.evtrading.swp391.search;
+
+import com.evtrading.swp391.event.ListingChangedEvent;
+import com.evtrading.swp391.repository.ListingRepository;
+import com.evtrading.swp391.repository.projection.ListingTextProjection;
+import com.evtrading.swp391.util.TextNormalizer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Phát hiện bài gần trùng (title hoặc description) với các bài chưa bị xóa, thay cho so sánh title chính xác.
+ *
+ * Văn bản được bỏ dấu và gộp khoảng trắng/dấu câu trước khi băm nên "VinFast VF8 giá tốt!!" và
+ * "vinfast vf8 gia tot" là một. Title và description được đánh chỉ mục riêng để bài chép title
+ * nhưng đổi mô tả (hoặc ngược lại) vẫn bị phát hiện.
+ * Chỉ mục được dựng khi khởi động và cập nhật theo ListingChangedEvent.
+ */
+@Component
+public class ListingNearDuplicateIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(ListingNearDuplicateIndex.class);
+    private static final int LOAD_PAGE_SIZE = 1000;
+    // Mô tả quá ngắn ("Xe đẹp", "Như hình") trùng nhau là bình thường, không đưa vào so sánh
+    private static final int MIN_DESCRIPTION_LENGTH = 30;
+
+    private final ListingRepository listingRepository;
+    private final MinHashIndex titles = new MinHashIndex();
+    private final MinHashIndex descriptions = new MinHashIndex();
+    private volatile boolean ready = false;
+    // Bài thay đổi trong lúc rebuild(): một trang nạp trước đó có thể ghi đè bản mới bằng dòng cũ, nên được nạp lại sau khi dựng xong
+    private final Set<Integer> changedDuringRebuild = ConcurrentHashMap.newKeySet();
+
+    public ListingNearDuplicateIndex(ListingRepository listingRepository) {
+        this.listingRepository = listingRepository;
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        int afterId = 0;
+        List<ListingTextProjection> batch;
+        do {
+            batch = listingRepository.findTextsNotDeleted(afterId, PageRequest.of(0, LOAD_PAGE_SIZE));
+            for (ListingTextProjection row : batch) {
+                index(row.getListingID(), row.getTitle(), row.getDescription());
+                afterId = row.getListingID();
+            }
+        } while (batch.size() == LOAD_PAGE_SIZE);
+        ready = true;
+        // Thay đổi đến sau khi bật ready tự áp dụng ngay; các id ghi trước đó được đọc lại từ DB
+        Set<Integer> replay = new HashSet<>(changedDuringRebuild);
+        changedDuringRebuild.removeAll(replay);
+        if (!replay.isEmpty()) {
+            apply(replay);
+        }
+        logger.info("Listing near-duplicate index built: {} titles, {} descriptions", titles.size(), descriptions.size());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onListingChanged(ListingChangedEvent event) {
+        if (!ready) {
+            changedDuringRebuild.addAll(event.getListingIds());
+        }
+        apply(event.getListingIds());
+    }
+
+    // Đọc lại các bài từ DB: bài chưa xóa được đánh chỉ mục lại, bài DELETED hoặc đã mất thì bị gỡ
+    private void apply(Set<Integer> listingIds) {
+        Set<Integer> remaining = new HashSet<>(listingIds);
+        for (ListingTextProjection row : listingRepository.findTextsByListingIDIn(listingIds)) {
+            remaining.remove(row.getListingID());
+            if ("DELETED".equals(row.getStatus())) {
+                remove(row.getListingID());
+            } else {
+                index(row.getListingID(), row.getTitle(), row.getDescription());
+            }
+        }
+        remaining.forEach(this::remove);
+    }
+
+    /**
+     * Các bài khác (trừ excludeId) có title hoặc description với độ tương đồng Jaccard ước lượng >= threshold.
+     */
+    public List<Match> findNearDuplicates(String title, String description, Integer excludeId, double threshold) {
+        List<Match> matches = new ArrayList<>();
+        for (MinHashIndex.Hit hit : titles.query(MinHashIndex.signature(normalize(title)), excludeId, threshold)) {
+            matches.add(new Match(hit.listingId(), Field.TITLE, hit.similarity()));
+        }
+        for (MinHashIndex.Hit hit : descriptions.query(descriptionSignature(description), excludeId, threshold)) {
+            matches.add(new Match(hit.listingId(), Field.DESCRIPTION, hit.similarity()));
+        }
+        return matches;
+    }
+
+    synchronized void index(Integer listingId, String title, String description) {
+        titles.put(listingId, MinHashIndex.signature(normalize(title)));
+        descriptions.put(listingId, descriptionSignature(description));
+    }
+
+    synchronized void remove(Integer listingId) {
+        titles.remove(listingId);
+        descriptions.remove(listingId);
+    }
+
+    private static int[] descriptionSignature(String description) {
+        String normalized = normalize(description);
+        return normalized.length() < MIN_DESCRIPTION_LENGTH ? null : MinHashIndex.signature(normalized);
+    }
+
+    private static String normalize(String text) {
+        return String.join(" ", TextNormalizer.tokenize(text));
+    }
+
+    public enum Field { TITLE, DESCRIPTION }
+
+    public record Match(Integer listingId, Field field, double similarity) {
+    }
+}
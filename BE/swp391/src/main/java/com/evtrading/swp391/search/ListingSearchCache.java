@@ -0,0 +1,194 @@
+package com.evtrading.swp391.search;
+
+import com.evtrading.swp391.dto.ListingResponseDTO;
+import com.evtrading.swp391.dto.ListingSearchCriteria;
+import com.evtrading.swp391.event.ListingCatalogRebuiltEvent;
+import com.evtrading.swp391.event.ListingChangedEvent;
+import com.evtrading.swp391.repository.ListingRepository;
+import com.evtrading.swp391.repository.projection.ListingScopeProjection;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Cache kết quả cho /api/listings và /api/listings/search.
+ *
+ * Khóa là bộ tiêu chí đã chuẩn hóa + trang/sort + cờ moderator. Caffeine giới hạn số mục và loại bỏ
+ * theo tần suất (W-TinyLFU) nên các truy vấn phổ biến (trang đầu của từng category) được giữ lại.
+ *
+ * Khi có ListingChangedEvent, chỉ xóa các mục bị ảnh hưởng: mục có chứa bài đó trong trang, hoặc mục
+ * có tiêu chí (category/brand/người bán, khoảng giá, khoảng năm, keyword) khớp với giá trị hiện tại của bài đó.
+ * Trạng thái không được dùng để lọc vì bài có thể vừa rời khỏi ACTIVE. TTL ngắn giới hạn độ lệch của
+ * totalElements trong trường hợp hiếm (ví dụ bài đổi category/giá mà không nằm trong trang đã cache).
+ *
+ * Listener chạy sau ListingKeywordIndex và ListingCatalogSnapshot (@Order) để không nạp lại kết quả cũ của chỉ mục
+ * keyword. ListingCatalogSnapshot thì chỉ dựng lại sau vài giây, nên trong khoảng đó request vẫn có thể nạp kết quả
+ * từ cột cũ; các mục này được xóa lại khi nhận ListingCatalogRebuiltEvent.
+ */
+@Component
+public class ListingSearchCache {
+
+    private static final long MAX_ENTRIES = 2_000;
+    private static final Duration TTL = Duration.ofSeconds(60);
+
+    private final ListingRepository listingRepository;
+    private final ListingKeywordIndex listingKeywordIndex;
+    private final Cache<Key, Entry> cache = Caffeine.newBuilder()
+            .maximumSize(MAX_ENTRIES)
+            .expireAfterWrite(TTL)
+            .recordStats()
+            .build();
+
+    public ListingSearchCache(ListingRepository listingRepository, ListingKeywordIndex listingKeywordIndex,
+                              MeterRegistry meterRegistry) {
+        this.listingRepository = listingRepository;
+        this.listingKeywordIndex = listingKeywordIndex;
+        // cache.gets{result=hit|miss}, cache.evictions, cache.size ... với tag cache=listing.search
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "listing.search");
+    }
+
+    /**
+     * Trả về kết quả đã cache hoặc gọi loader (mỗi khóa chỉ một loader chạy tại một thời điểm).
+     */
+    public Page<ListingResponseDTO> get(Key key, Supplier<Page<ListingResponseDTO>> loader) {
+        return cache.get(key, k -> {
+            Page<ListingResponseDTO> page = loader.get();
+            Set<Integer> ids = new HashSet<>();
+            page.forEach(dto -> ids.add(dto.getId()));
+            return new Entry(page, ids);
+        }).page();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    public void onListingChanged(ListingChangedEvent event) {
+        invalidate(event.getListingIds());
+    }
+
+    // Bản chụp vừa nạp các thay đổi: xóa các mục có thể đã được nạp từ cột cũ trong lúc chờ dựng lại
+    @EventListener
+    public void onCatalogRebuilt(ListingCatalogRebuiltEvent event) {
+        invalidate(event.getListingIds());
+    }
+
+    private void invalidate(Set<Integer> changed) {
+        List<ListingScopeProjection> rows = listingRepository.findScopesByListingIDIn(changed);
+        // Mỗi keyword chỉ tra chỉ mục một lần cho cả lượt quét
+        Map<String, Set<Integer>> keywordMatches = new HashMap<>();
+        cache.asMap().entrySet().removeIf(e -> e.getValue().containsAny(changed)
+                || rows.stream().anyMatch(row -> e.getKey().covers(row)
+                        && matchesKeyword(e.getKey(), row.getListingID(), keywordMatches)));
+    }
+
+    // Chỉ mục chỉ chứa bài ACTIVE: với moderator hoặc khi chỉ mục chưa sẵn sàng thì không loại được mục nào theo keyword
+    private boolean matchesKeyword(Key key, Integer listingId, Map<String, Set<Integer>> keywordMatches) {
+        if (key.keyword() == null || key.moderator() || !listingKeywordIndex.isReady()) {
+            return true;
+        }
+        return keywordMatches.computeIfAbsent(key.keyword(), listingKeywordIndex::search).contains(listingId);
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    private record Entry(Page<ListingResponseDTO> page, Set<Integer> listingIds) {
+        boolean containsAny(Set<Integer> ids) {
+            return ids.stream().anyMatch(listingIds::contains);
+        }
+    }
+
+    /**
+     * Khóa cache. categoryId/brandId/userId là phạm vi thực sự được áp dụng (null = không giới hạn),
+     * dùng cho cả so sánh khóa và xác định mục nào bị ảnh hưởng khi bài đăng thay đổi.
+     */
+    public record Key(String view, Integer categoryId, Integer brandId, Integer userId, String status,
+                      String keyword, BigDecimal minPrice, BigDecimal maxPrice, Integer minYear, Integer maxYear,
+                      int page, int size, String sort, boolean moderator, boolean facets) {
+
+        public static Key forSearch(ListingSearchCriteria c, Pageable pageable, boolean moderator, boolean facets) {
+            return new Key("search", c.getCategoryId(), c.getBrandId(), c.getUserId(),
+                    moderator ? blankToNull(c.getStatus()) : null,
+                    canonicalKeyword(c.getKeyword()),
+                    canonicalPrice(c.getMinPrice()), canonicalPrice(c.getMaxPrice()),
+                    c.getMinYear(), c.getMaxYear(),
+                    pageable.getPageNumber(), pageable.getPageSize(), pageable.getSort().toString(),
+                    moderator, facets);
+        }
+
+        /**
+         * Chỉ giữ tham số mà ListingService.getListings thực sự dùng (theo cùng thứ tự ưu tiên),
+         * để các URL tương đương dùng chung một mục.
+         */
+        public static Key forList(String status, Integer userId, Integer categoryId, Integer brandId,
+                                  Pageable pageable, boolean moderator) {
+            String effectiveStatus = null;
+            Integer scopeUser = null;
+            Integer scopeCategory = null;
+            Integer scopeBrand = null;
+            if (moderator && status != null) {
+                effectiveStatus = status;
+            } else if (userId != null) {
+                scopeUser = userId;
+            } else if (categoryId != null) {
+                scopeCategory = categoryId;
+            } else if (brandId != null) {
+                scopeBrand = brandId;
+            }
+            return new Key("list", scopeCategory, scopeBrand, scopeUser, effectiveStatus, null, null, null,
+                    null, null, pageable.getPageNumber(), pageable.getPageSize(), pageable.getSort().toString(),
+                    moderator, false);
+        }
+
+        boolean covers(ListingScopeProjection listing) {
+            return (categoryId == null || categoryId.equals(listing.getCategoryID()))
+                    && (brandId == null || brandId.equals(listing.getBrandID()))
+                    && (userId == null || userId.equals(listing.getUserID()))
+                    && inRange(listing.getPrice(), minPrice, maxPrice)
+                    && inRange(listing.getYear(), minYear, maxYear);
+        }
+
+        // Giá trị null chỉ khớp khi không có cận nào, giống điều kiện SQL của ListingSpecifications
+        private static <T extends Comparable<? super T>> boolean inRange(T value, T min, T max) {
+            if (min == null && max == null) {
+                return true;
+            }
+            return value != null
+                    && (min == null || value.compareTo(min) >= 0)
+                    && (max == null || value.compareTo(max) <= 0);
+        }
+
+        private static String blankToNull(String value) {
+            return value == null || value.isBlank() ? null : value;
+        }
+
+        private static String canonicalKeyword(String keyword) {
+            if (keyword == null || keyword.isBlank()) {
+                return null;
+            }
+            return keyword.trim().toLowerCase(Locale.ROOT);
+        }
+
+        private static BigDecimal canonicalPrice(BigDecimal price) {
+            return price == null ? null : price.stripTrailingZeros();
+        }
+    }
+}
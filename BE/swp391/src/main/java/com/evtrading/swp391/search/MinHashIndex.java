@@ -0,0 +1,159 @@
+package com.evtrading.swp391.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Chỉ mục MinHash + LSH cho một trường văn bản (đã chuẩn hóa bởi bên gọi).
+ *
+ * Mỗi văn bản được cắt thành shingle ký tự độ dài SHINGLE, rút thành chữ ký SIGNATURE_SIZE giá trị min-hash.
+ * Chữ ký chia thành BANDS dải, mỗi dải ROWS giá trị; hai văn bản trùng ít nhất một dải thì thành ứng viên.
+ * Với 32 x 4, cặp có Jaccard 0.8 gần như chắc chắn thành ứng viên, cặp 0.3 chỉ khoảng 23%.
+ * Ứng viên được lọc lại bằng tỉ lệ vị trí trùng trong chữ ký (ước lượng Jaccard).
+ *
+ * Đọc không cần khóa; ghi (put/remove) phải được bên gọi tuần tự hóa.
+ */
+final class MinHashIndex {
+
+    static final int SHINGLE = 5;
+    private static final int BANDS = 32;
+    private static final int ROWS = 4;
+    private static final int SIGNATURE_SIZE = BANDS * ROWS;
+    // Giới hạn độ dài để chi phí tính chữ ký của mô tả rất dài có trần
+    private static final int MAX_TEXT_LENGTH = 4000;
+    private static final long[] SEEDS = new long[SIGNATURE_SIZE];
+
+    static {
+        long x = 0x9E3779B97F4A7C15L;
+        for (int i = 0; i < SIGNATURE_SIZE; i++) {
+            x = mix(x + 0x9E3779B97F4A7C15L);
+            SEEDS[i] = x;
+        }
+    }
+
+    private final Map<Integer, int[]> signatures = new ConcurrentHashMap<>();
+    @SuppressWarnings("unchecked")
+    private final Map<Long, Set<Integer>>[] bands = new Map[BANDS];
+
+    MinHashIndex() {
+        for (int b = 0; b < BANDS; b++) {
+            bands[b] = new ConcurrentHashMap<>();
+        }
+    }
+
+    int size() {
+        return signatures.size();
+    }
+
+    /**
+     * Chữ ký của văn bản, hoặc null nếu văn bản rỗng.
+     */
+    static int[] signature(String text) {
+        if (text == null || text.isEmpty()) {
+            return null;
+        }
+        String s = text.length() > MAX_TEXT_LENGTH ? text.substring(0, MAX_TEXT_LENGTH) : text;
+        int[] sig = new int[SIGNATURE_SIZE];
+        Arrays.fill(sig, Integer.MAX_VALUE);
+        int last = Math.max(1, s.length() - SHINGLE + 1);
+        for (int start = 0; start < last; start++) {
+            long h = 0xCBF29CE484222325L;
+            for (int i = start, end = Math.min(s.length(), start + SHINGLE); i < end; i++) {
+                h = (h ^ s.charAt(i)) * 0x100000001B3L;
+            }
+            for (int k = 0; k < SIGNATURE_SIZE; k++) {
+                int v = (int) (mix(h ^ SEEDS[k]) >>> 33);
+                if (v < sig[k]) {
+                    sig[k] = v;
+                }
+            }
+        }
+        return sig;
+    }
+
+    void put(Integer id, int[] signature) {
+        remove(id);
+        if (signature == null) {
+            return;
+        }
+        signatures.put(id, signature);
+        for (int b = 0; b < BANDS; b++) {
+            bands[b].computeIfAbsent(bandKey(signature, b), k -> ConcurrentHashMap.newKeySet()).add(id);
+        }
+    }
+
+    void remove(Integer id) {
+        int[] previous = signatures.remove(id);
+        if (previous == null) {
+            return;
+        }
+        for (int b = 0; b < BANDS; b++) {
+            long key = bandKey(previous, b);
+            Set<Integer> ids = bands[b].get(key);
+            if (ids != null) {
+                ids.remove(id);
+                if (ids.isEmpty()) {
+                    bands[b].remove(key);
+                }
+            }
+        }
+    }
+
+    /**
+     * Các văn bản có Jaccard ước lượng >= threshold so với chữ ký cho trước, trừ excludeId.
+     */
+    List<Hit> query(int[] signature, Integer excludeId, double threshold) {
+        List<Hit> hits = new ArrayList<>();
+        if (signature == null) {
+            return hits;
+        }
+        Set<Integer> candidates = new HashSet<>();
+        for (int b = 0; b < BANDS; b++) {
+            Set<Integer> ids = bands[b].get(bandKey(signature, b));
+            if (ids != null) {
+                candidates.addAll(ids);
+            }
+        }
+        candidates.remove(excludeId);
+        for (Integer id : candidates) {
+            int[] other = signatures.get(id);
+            if (other == null) {
+                continue;
+            }
+            int equal = 0;
+            for (int k = 0; k < SIGNATURE_SIZE; k++) {
+                if (signature[k] == other[k]) {
+                    equal++;
+                }
+            }
+            double similarity = (double) equal / SIGNATURE_SIZE;
+            if (similarity >= threshold) {
+                hits.add(new Hit(id, similarity));
+            }
+        }
+        return hits;
+    }
+
+    record Hit(Integer listingId, double similarity) {
+    }
+
+    private static long bandKey(int[] signature, int band) {
+        long h = band;
+        for (int r = 0, i = band * ROWS; r < ROWS; r++, i++) {
+            h = h * 0x100000001B3L + signature[i];
+        }
+        return mix(h);
+    }
+
+    // SplitMix64 finalizer
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,266 @@
+package com.evtrading.swp391.security;
+
+import com.evtrading.swp391.service.IdempotencyStore;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.lang.NonNull;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Xử lý header Idempotency-Key cho các endpoint tạo order/payment mà client mobile hay gửi lại khi timeout.
+ *
+ * Request đầu tiên với một key được chạy bình thường và response (status, content type, body) được lưu
+ * vào IdempotencyStore. Request sau cùng key, cùng user, cùng endpoint nhận lại đúng response đó
+ * (kèm header Idempotent-Replayed: true) mà không chạm tới controller; nếu request đầu còn đang chạy
+ * thì request sau chờ nó xong. Cùng key nhưng khác nội dung request trả 422. Không có header thì
+ * request đi qua như cũ.
+ *
+ * Filter được Spring Boot đăng ký như servlet filter thường, chạy sau springSecurityFilterChain, nên
+ * request chưa đăng nhập đã bị chặn trước đó và user hiện tại đã có trong SecurityContext.
+ */
+@Component
+@Order(Ordered.LOWEST_PRECEDENCE)
+public class IdempotencyFilter extends OncePerRequestFilter {
+
+    public static final String HEADER = "Idempotency-Key";
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+
+    private static final Logger logger = LoggerFactory.getLogger(IdempotencyFilter.class);
+    private static final int MAX_KEY_LENGTH = 255;
+    private static final List<String> IDEMPOTENT_PATHS = List.of(
+            "/api/orders",
+            "/api/payments",
+            "/api/listings/{id}/extend-payment");
+
+    private final IdempotencyStore store;
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+
+    public IdempotencyFilter(IdempotencyStore store) {
+        this.store = store;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(@NonNull HttpServletRequest request) {
+        if (!"POST".equalsIgnoreCase(request.getMethod()) || request.getHeader(HEADER) == null) {
+            return true;
+        }
+        String path = request.getServletPath();
+        return IDEMPOTENT_PATHS.stream().noneMatch(pattern -> pathMatcher.match(pattern, path));
+    }
+
+    @Override
+    protected void doFilterInternal(@NonNull HttpServletRequest request,
+            @NonNull HttpServletResponse response, @NonNull FilterChain filterChain)
+            throws ServletException, IOException {
+        String idempotencyKey = request.getHeader(HEADER).trim();
+        if (idempotencyKey.isEmpty() || idempotencyKey.length() > MAX_KEY_LENGTH) {
+            writeError(response, HttpStatus.BAD_REQUEST, "Invalid Idempotency-Key header");
+            return;
+        }
+
+        CachedBodyRequest cachedRequest = new CachedBodyRequest(request);
+        String key = sha256(currentUser() + "\n" + request.getMethod() + " " + request.getServletPath()
+                + "\n" + idempotencyKey);
+        String query = request.getQueryString() != null ? request.getQueryString() : "";
+        String requestHash = sha256(request.getMethod() + " " + request.getRequestURI() + "?" + query + "\n",
+                cachedRequest.body);
+
+        IdempotencyStore.Outcome outcome;
+        try {
+            outcome = store.begin(key);
+        } catch (TimeoutException e) {
+            writeError(response, HttpStatus.CONFLICT, "A request with this Idempotency-Key is still in progress");
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            writeError(response, HttpStatus.SERVICE_UNAVAILABLE, "Interrupted while waiting for the original request");
+            return;
+        }
+
+        if (!outcome.isLeader()) {
+            replay(outcome.replay(), requestHash, response);
+            return;
+        }
+
+        ContentCachingResponseWrapper cachingResponse = new ContentCachingResponseWrapper(response);
+        IdempotencyStore.StoredResponse result = null;
+        try {
+            filterChain.doFilter(cachedRequest, cachingResponse);
+            int status = cachingResponse.getStatus();
+            if (isReplayable(status)) {
+                result = new IdempotencyStore.StoredResponse(requestHash, status,
+                        cachingResponse.getContentType(), cachingResponse.getContentAsByteArray());
+            }
+        } finally {
+            store.finish(key, outcome.lead(), result);
+            cachingResponse.copyBodyToResponse();
+        }
+    }
+
+    // Lỗi server và lỗi xác thực không được lưu: client gửi lại cùng key sẽ được chạy lại
+    private static boolean isReplayable(int status) {
+        return status < 500 && status != HttpStatus.UNAUTHORIZED.value() && status != HttpStatus.FORBIDDEN.value();
+    }
+
+    private void replay(IdempotencyStore.StoredResponse stored, String requestHash,
+                        HttpServletResponse response) throws IOException {
+        if (!stored.requestHash().equals(requestHash)) {
+            writeError(response, HttpStatus.UNPROCESSABLE_ENTITY,
+                    "Idempotency-Key was already used with a different request");
+            return;
+        }
+        logger.debug("Replaying stored response for idempotent request");
+        response.setStatus(stored.status());
+        response.setHeader(REPLAYED_HEADER, "true");
+        if (stored.contentType() != null) {
+            response.setContentType(stored.contentType());
+        }
+        if (stored.body() != null && stored.body().length > 0) {
+            response.setContentLength(stored.body().length);
+            response.getOutputStream().write(stored.body());
+        }
+    }
+
+    private static void writeError(HttpServletResponse response, HttpStatus status, String message) throws IOException {
+        response.setStatus(status.value());
+        response.setContentType("application/json;charset=UTF-8");
+        response.getWriter().write("{\"message\":\"" + message + "\"}");
+    }
+
+    private static String currentUser() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return authentication != null && authentication.isAuthenticated() ? authentication.getName() : "";
+    }
+
+    private static String sha256(String text) {
+        return sha256(text, new byte[0]);
+    }
+
+    private static String sha256(String prefix, byte[] body) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(prefix.getBytes(StandardCharsets.UTF_8));
+            digest.update(body);
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Đọc sẵn body để băm, rồi cho controller đọc lại từ bộ nhớ.
+     * Với form (urlencoded/multipart) thì không đọc input stream: container cần nó để tách tham số cho
+     * @RequestParam, nên thay vào đó băm các tham số đã được tách (theo thứ tự tên).
+     */
+    private static final class CachedBodyRequest extends HttpServletRequestWrapper {
+        private final byte[] body;
+        private final boolean form;
+
+        CachedBodyRequest(HttpServletRequest request) throws IOException {
+            super(request);
+            this.form = isForm(request.getContentType());
+            this.body = form ? canonicalParameters(request) : request.getInputStream().readAllBytes();
+        }
+
+        private static boolean isForm(String contentType) {
+            if (contentType == null) {
+                return false;
+            }
+            try {
+                MediaType mediaType = MediaType.parseMediaType(contentType);
+                return MediaType.APPLICATION_FORM_URLENCODED.includes(mediaType)
+                        || MediaType.MULTIPART_FORM_DATA.includes(mediaType);
+            } catch (InvalidMediaTypeException e) {
+                return false;
+            }
+        }
+
+        private static byte[] canonicalParameters(HttpServletRequest request) {
+            StringBuilder sb = new StringBuilder();
+            new TreeMap<>(request.getParameterMap()).forEach((name, values) ->
+                    sb.append(name).append('=').append(String.join(",", values)).append('\n'));
+            return sb.toString().getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public ServletInputStream getInputStream() throws IOException {
+            if (form) {
+                return super.getInputStream();
+            }
+            ByteArrayInputStream source = new ByteArrayInputStream(body);
+            return new ServletInputStream() {
+                @Override
+                public boolean isFinished() {
+                    return source.available() == 0;
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                // Dữ liệu đã nằm trong bộ nhớ nên báo ngay là có dữ liệu rồi kết thúc
+                @Override
+                public void setReadListener(ReadListener readListener) {
+                    try {
+                        if (!isFinished()) {
+                            readListener.onDataAvailable();
+                        }
+                        readListener.onAllDataRead();
+                    } catch (IOException e) {
+                        readListener.onError(e);
+                    }
+                }
+
+                @Override
+                public int read() {
+                    return source.read();
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) {
+                    return source.read(b, off, len);
+                }
+            };
+        }
+
+        @Override
+        public BufferedReader getReader() throws IOException {
+            if (form) {
+                return super.getReader();
+            }
+            String encoding = getCharacterEncoding() != null ? getCharacterEncoding() : StandardCharsets.UTF_8.name();
+            return new BufferedReader(new InputStreamReader(getInputStream(), Charset.forName(encoding)));
+        }
+    }
+}
@@ -1,21 +1,32 @@
 package com.evtrading.swp391.service;
 
-import com.evtrading.swp391.entity.Listing;
-import com.evtrading.swp391.entity.Payment;
-import com.evtrading.swp391.entity.Transaction;
+import com.evtrading.swp391.event.ListingChangedEvent;
 import com.evtrading.swp391.repository.ListingRepository;
 import com.evtrading.swp391.repository.PaymentRepository;
 import com.evtrading.swp391.repository.TransactionRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.beans.factory.annotation.Autowired;
 
 import java.util.Date;
 import java.util.List;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 
 @Service
 public class AutoStatusUpdater {
 
+    private static final Logger logger = LoggerFactory.getLogger(AutoStatusUpdater.class);
+
+    // Số dòng tối đa trong một câu UPDATE, mỗi đoạn chạy trong transaction riêng
+    private static final int CHUNK_SIZE = 500;
+
     @Autowired
     private ListingRepository listingRepository;
 
@@ -25,38 +36,65 @@ public class AutoStatusUpdater {
     @Autowired
     private TransactionRepository transactionRepository;
 
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
     // Chạy mỗi 30 phút
     @Scheduled(fixedRate = 1800000)
     public void updateExpiredListingsPaymentsTransactions() {
         Date now = new Date();
 
-        // Cập nhật listing hết hạn
-        List<Listing> expiredListings = listingRepository.findByExpiryDateBeforeAndStatus(now, "ACTIVE");
-        for (Listing listing : expiredListings) {
-            listing.setStatus("EXPIRED");
-            listingRepository.save(listing);
-        }
+        // Cập nhật listing hết hạn (ListingExpiryEngine xử lý đúng thời điểm, đây là lưới an toàn)
+        int listings = expireInChunks("listing",
+                (afterId, page) -> listingRepository.findExpiredActiveIds(now, afterId, page),
+                ids -> {
+                    int updated = listingRepository.expireDueListings(ids, now);
+                    if (updated > 0) {
+                        eventPublisher.publishEvent(new ListingChangedEvent(ids));
+                    }
+                    return updated;
+                });
 
         // Cập nhật payment hết hạn (ví dụ: nếu quá 15p mà vẫn PENDING thì set EXPIRED)
         Date paymentDeadline = new Date(now.getTime() - 15 * 60 * 1000); // 15p trước
-        List<Payment> expiredPayments = paymentRepository.findByStatusAndPaidAtBefore("PENDING", paymentDeadline);
-        for (Payment payment : expiredPayments) {
-            String status = payment.getStatus();
-            // Chỉ xử lý nếu chưa COMPLETED, FAILED, PAID và đang PENDING
-            if ("PENDING".equals(status)) {
-                payment.setStatus("EXPIRED");
-                paymentRepository.save(payment);
-            }
-        }
+        int payments = expireInChunks("payment",
+                (afterId, page) -> paymentRepository.findPendingIdsPaidBefore(paymentDeadline, afterId, page),
+                ids -> paymentRepository.expirePendingPayments(ids, paymentDeadline));
+
+        // Cập nhật transaction hết hạn (CHỈ CHUYỂN TRẠNG THÁI NẾU CHƯA FULLY_PAID)
+        int transactions = expireInChunks("transaction",
+                (afterId, page) -> transactionRepository.findOverdueIds(now, afterId, page),
+                ids -> transactionRepository.expireOverdue(ids, now));
 
-        // Cập nhật transaction hết hạn
-        List<Transaction> expiredTransactions = transactionRepository.findByDueTimeBeforeAndStatusNot(now, "EXPIRED");
-        for (Transaction transaction : expiredTransactions) {
-            // CHỈ CHUYỂN TRẠNG THÁI NẾU CHƯA FULLY_PAID
-            if (!"FULLY_PAID".equals(transaction.getStatus())) {
-                transaction.setStatus("EXPIRED");
-                transactionRepository.save(transaction);
+        logger.info("Auto status update: expired {} listings, {} payments, {} transactions",
+                listings, payments, transactions);
+    }
+
+    /**
+     * Lấy id theo từng đoạn (keyset theo id tăng dần) rồi chạy một câu UPDATE có điều kiện trạng thái
+     * cho mỗi đoạn. Số dòng thực sự bị đổi được cộng vào metric autostatus.expired{entity=...}.
+     */
+    private int expireInChunks(String entity,
+                               BiFunction<Integer, Pageable, List<Integer>> findIds,
+                               Function<List<Integer>, Integer> expire) {
+        Pageable chunk = PageRequest.of(0, CHUNK_SIZE);
+        int total = 0;
+        int afterId = 0;
+        while (true) {
+            List<Integer> ids = findIds.apply(afterId, chunk);
+            if (ids.isEmpty()) {
+                break;
+            }
+            total += expire.apply(ids);
+            afterId = ids.get(ids.size() - 1);
+            if (ids.size() < CHUNK_SIZE) {
+                break;
             }
         }
+        meterRegistry.counter("autostatus.expired", "entity", entity).increment(total);
+        return total;
     }
-}
\ No newline at end of file
+}
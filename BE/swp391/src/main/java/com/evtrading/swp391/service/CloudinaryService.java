@@ -2,34 +2,144 @@ package com.evtrading.swp391.service;
 
 import com.cloudinary.Cloudinary;
 import com.cloudinary.utils.ObjectUtils;
+import com.evtrading.swp391.storage.ImageStorage;
+import com.evtrading.swp391.util.ImageFingerprint;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 @Service
-public class CloudinaryService {
+@ConditionalOnProperty(name = "app.storage.type", havingValue = "cloudinary", matchIfMissing = true)
+public class CloudinaryService implements ImageStorage {
+
+    // Số ảnh được upload đồng thời trên toàn ứng dụng (giới hạn băng thông và bộ nhớ đệm)
+    private static final int MAX_CONCURRENT_UPLOADS = 8;
+    // Kích thước mỗi phần khi stream lên Cloudinary (tối thiểu 5MB với upload nhiều phần).
+    // File không lớn hơn một phần được upload một lần, tránh cấp phát bộ đệm 5MB cho mỗi ảnh nhỏ
+    private static final int CHUNK_SIZE = 5 * 1024 * 1024;
+
+    private static final Logger logger = LoggerFactory.getLogger(CloudinaryService.class);
 
     private final Cloudinary cloudinary;
+    private final ExecutorService uploadExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Semaphore uploadPermits = new Semaphore(MAX_CONCURRENT_UPLOADS);
 
     public CloudinaryService(Cloudinary cloudinary) {
         this.cloudinary = cloudinary;
     }
 
-    public List<String> uploadImages(List<MultipartFile> files) {
-        List<String> urls = new ArrayList<>();
+    /**
+     * Upload song song (mỗi ảnh một virtual thread, tối đa MAX_CONCURRENT_UPLOADS cùng lúc),
+     * file lớn hơn CHUNK_SIZE được stream từng phần từ InputStream của multipart thay vì nạp cả file vào heap.
+     * Kết quả theo đúng thứ tự của files. Nếu một ảnh lỗi, các ảnh chưa bắt đầu được bỏ qua, các ảnh
+     * đang upload được chờ xong rồi cùng các ảnh đã lên Cloudinary bị xóa lại, sau đó ném RuntimeException.
+     */
+    @Override
+    public List<StoredImage> storeAll(List<MultipartFile> files) {
+        AtomicBoolean aborted = new AtomicBoolean();
+        List<Future<StoredImage>> futures = new ArrayList<>(files.size());
         for (MultipartFile file : files) {
+            futures.add(uploadExecutor.submit(() -> uploadImage(file, aborted)));
+        }
+
+        List<StoredImage> uploaded = new ArrayList<>(files.size());
+        try {
+            for (Future<StoredImage> future : futures) {
+                uploaded.add(future.get());
+            }
+        } catch (ExecutionException e) {
+            abort(futures, aborted);
+            throw new RuntimeException("Failed to upload image", e.getCause());
+        } catch (InterruptedException e) {
+            abort(futures, aborted);
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Image upload interrupted", e);
+        }
+        return uploaded;
+    }
+
+    @Override
+    public void deleteQuietly(List<StoredImage> images) {
+        for (StoredImage image : images) {
             try {
-                Map uploadResult = cloudinary.uploader().upload(
-                        file.getBytes(),
-                        ObjectUtils.asMap("resource_type", "image", "folder", "listings"));
-                urls.add((String) uploadResult.get("secure_url"));
-            } catch (IOException e) {
-                throw new RuntimeException("Failed to upload image", e);
+                cloudinary.uploader().destroy(image.id(), ObjectUtils.asMap("resource_type", "image"));
+            } catch (IOException | RuntimeException e) {
+                logger.warn("Failed to delete orphan image {}", image.id(), e);
+            }
+        }
+    }
+
+    /**
+     * Không cancel(true) các upload đang chạy: một request HTTP đã gửi vẫn có thể tạo ảnh trên Cloudinary
+     * sau khi bị ngắt. Thay vào đó bật cờ aborted để các ảnh chưa bắt đầu tự bỏ qua, chờ mọi upload kết thúc
+     * rồi xóa tất cả ảnh đã upload thành công.
+     */
+    private void abort(List<Future<StoredImage>> futures, AtomicBoolean aborted) {
+        aborted.set(true);
+        // Tạm bỏ cờ interrupt để chờ được các upload còn lại; khôi phục khi xong
+        boolean interrupted = Thread.interrupted();
+        List<StoredImage> completed = new ArrayList<>();
+        for (Future<StoredImage> future : futures) {
+            while (true) {
+                try {
+                    StoredImage image = future.get();
+                    if (image != null) {
+                        completed.add(image);
+                    }
+                    break;
+                } catch (ExecutionException | CancellationException e) {
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        deleteQuietly(completed);
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Trả về null nếu lô đã bị hủy trước khi ảnh này bắt đầu upload
+    private StoredImage uploadImage(MultipartFile file, AtomicBoolean aborted) throws IOException, InterruptedException {
+        uploadPermits.acquire();
+        try {
+            if (aborted.get()) {
+                return null;
+            }
+            Map<String, Object> options = ObjectUtils.asMap("resource_type", "image", "folder", "listings");
+            Map uploadResult;
+            if (file.getSize() <= CHUNK_SIZE) {
+                uploadResult = cloudinary.uploader().upload(file.getBytes(), options);
+            } else {
+                try (InputStream in = file.getInputStream()) {
+                    uploadResult = cloudinary.uploader().uploadLarge(in, options, CHUNK_SIZE);
+                }
             }
+            return new StoredImage((String) uploadResult.get("secure_url"), (String) uploadResult.get("public_id"),
+                    ImageFingerprint.of(file));
+        } finally {
+            uploadPermits.release();
         }
-        return urls;
     }
-}
\ No newline at end of file
+
+    @PreDestroy
+    public void shutdown() {
+        uploadExecutor.shutdownNow();
+    }
+}
@@ -15,6 +15,7 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
@@ -114,10 +115,12 @@ public class FavoritesService {
         Optional<User> u = userRepository.findByUsername(username);
         if (u.isEmpty()) return List.of();
         List<Favorites> favs = favoritesRepository.findByIdUserID(u.get().getUserID());
-        
+        Map<Integer, List<ListingImage>> imagesByListing = listingImageRepository.findGroupedByListingIds(
+                favs.stream().map(fav -> fav.getListing().getListingID()).toList());
+
         return favs.stream().map(fav -> {
             Listing listing = fav.getListing();
-            List<ListingImage> images = listingImageRepository.findByListingListingID(listing.getListingID());
+            List<ListingImage> images = imagesByListing.getOrDefault(listing.getListingID(), List.of());
             return listingMapper.toDto(listing, images);
         }).collect(Collectors.toList());
     }
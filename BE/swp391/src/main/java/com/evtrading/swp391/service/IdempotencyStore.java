@@ -0,0 +1,172 @@
+package com.evtrading.swp391.service;
+
+import com.evtrading.swp391.entity.IdempotencyRecord;
+import com.evtrading.swp391.repository.IdempotencyRecordRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Kho response theo Idempotency-Key cho các endpoint tạo order/payment.
+ *
+ * Response đã hoàn tất nằm trong Caffeine (TTL app.idempotency.ttl-hours, mặc định 24 giờ) và được ghi
+ * xuống bảng IdempotencyRecord để vẫn replay được sau khi khởi động lại. Request đang chạy được giữ
+ * trong một map key -> CompletableFuture: request trùng key tới trong lúc đó chờ future thay vì chạy lại.
+ * Việc chặn request đang chạy chỉ đúng khi chạy một instance ứng dụng.
+ */
+@Service
+public class IdempotencyStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(IdempotencyStore.class);
+    private static final long MAX_ENTRIES = 50_000;
+
+    private final IdempotencyRecordRepository recordRepository;
+    private final Duration ttl;
+    private final Duration waitTimeout;
+    private final Cache<String, StoredResponse> completed;
+    private final Map<String, CompletableFuture<StoredResponse>> inFlight = new ConcurrentHashMap<>();
+
+    public IdempotencyStore(IdempotencyRecordRepository recordRepository,
+                            MeterRegistry meterRegistry,
+                            @Value("${app.idempotency.ttl-hours:24}") long ttlHours,
+                            @Value("${app.idempotency.wait-seconds:30}") long waitSeconds) {
+        this.recordRepository = recordRepository;
+        this.ttl = Duration.ofHours(ttlHours);
+        this.waitTimeout = Duration.ofSeconds(waitSeconds);
+        this.completed = Caffeine.newBuilder()
+                .maximumSize(MAX_ENTRIES)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, completed, "idempotency");
+        Gauge.builder("idempotency.in.flight", inFlight, Map::size).register(meterRegistry);
+    }
+
+    public record StoredResponse(String requestHash, int status, String contentType, byte[] body) {
+    }
+
+    /**
+     * Kết quả của begin: hoặc request này được chạy (lead != null), hoặc đã có response để replay.
+     */
+    public record Outcome(CompletableFuture<StoredResponse> lead, StoredResponse replay) {
+        public boolean isLeader() {
+            return lead != null;
+        }
+    }
+
+    /**
+     * Giành quyền chạy request cho key, hoặc lấy response đã có. Nếu một request trùng key đang chạy
+     * thì chờ nó xong (tối đa app.idempotency.wait-seconds); request đó thất bại mà không lưu gì thì
+     * thử giành lại quyền chạy.
+     *
+     * @throws TimeoutException nếu request đang chạy chưa xong sau thời gian chờ
+     */
+    public Outcome begin(String key) throws TimeoutException, InterruptedException {
+        long deadline = System.nanoTime() + waitTimeout.toNanos();
+        while (true) {
+            StoredResponse stored = lookup(key);
+            if (stored != null) {
+                return new Outcome(null, stored);
+            }
+            CompletableFuture<StoredResponse> mine = new CompletableFuture<>();
+            CompletableFuture<StoredResponse> running = inFlight.putIfAbsent(key, mine);
+            if (running == null) {
+                // Request trước có thể vừa xong giữa lookup và putIfAbsent
+                stored = lookup(key);
+                if (stored != null) {
+                    inFlight.remove(key, mine);
+                    mine.complete(stored);
+                    return new Outcome(null, stored);
+                }
+                return new Outcome(mine, null);
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                throw new TimeoutException("Request with this idempotency key is still in progress");
+            }
+            try {
+                StoredResponse result = running.get(remaining, TimeUnit.NANOSECONDS);
+                if (result != null) {
+                    return new Outcome(null, result);
+                }
+            } catch (ExecutionException e) {
+                // Không xảy ra: future chỉ được complete bằng giá trị (null khi request trước không lưu kết quả)
+            }
+        }
+    }
+
+    /**
+     * Kết thúc request đang chạy. response == null nghĩa là không lưu (lỗi server, lỗi xác thực...):
+     * request trùng key đang chờ sẽ được chạy lại.
+     */
+    public void finish(String key, CompletableFuture<StoredResponse> lead, StoredResponse response) {
+        try {
+            if (response != null) {
+                completed.put(key, response);
+                persist(key, response);
+            }
+        } finally {
+            inFlight.remove(key, lead);
+            lead.complete(response);
+        }
+    }
+
+    // Dọn bản ghi hết hạn trong DB (Caffeine tự hết hạn)
+    @Scheduled(fixedDelay = 3600000, initialDelay = 600000)
+    public void purgeExpired() {
+        int deleted = recordRepository.deleteExpired(new Date());
+        if (deleted > 0) {
+            logger.info("Purged {} expired idempotency records", deleted);
+        }
+    }
+
+    private StoredResponse lookup(String key) {
+        StoredResponse cached = completed.getIfPresent(key);
+        if (cached != null) {
+            return cached;
+        }
+        IdempotencyRecord record = recordRepository.findById(key).orElse(null);
+        if (record == null || record.getExpiresAt() == null || record.getExpiresAt().before(new Date())) {
+            return null;
+        }
+        StoredResponse stored = new StoredResponse(record.getRequestHash(), record.getStatusCode(),
+                record.getContentType(), record.getResponseBody());
+        completed.put(key, stored);
+        return stored;
+    }
+
+    private void persist(String key, StoredResponse response) {
+        Date now = new Date();
+        IdempotencyRecord record = new IdempotencyRecord();
+        record.setRecordKey(key);
+        record.setRequestHash(response.requestHash());
+        record.setStatusCode(response.status());
+        record.setContentType(response.contentType());
+        record.setResponseBody(response.body());
+        record.setCreatedAt(now);
+        record.setExpiresAt(new Date(now.getTime() + ttl.toMillis()));
+        try {
+            recordRepository.save(record);
+        } catch (DataAccessException e) {
+            // Vẫn replay được từ bộ nhớ; chỉ mất khả năng replay sau khi khởi động lại
+            logger.warn("Could not persist idempotency record: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.evtrading.swp391.service;
+
+import com.evtrading.swp391.event.ListingChangedEvent;
+import com.evtrading.swp391.repository.ListingRepository;
+import com.evtrading.swp391.repository.projection.ListingExpiryProjection;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Chuyển bài đăng ACTIVE sang EXPIRED đúng thời điểm expiryDate.
+ *
+ * Các mốc hết hạn được giữ trong một DelayQueue (sắp theo thời gian). Một thread nền lấy
+ * các mốc đã tới hạn ra theo lô và chạy một câu UPDATE cho cả lô. Khi khởi động, hàng đợi
+ * được dựng lại từ DB nên không cần lưu trạng thái riêng.
+ *
+ * Hàng đợi có thể chứa mốc cũ (ví dụ bài đã được gia hạn hoặc đã bán): câu UPDATE chỉ đổi
+ * bài còn ACTIVE và có expiryDate <= now nên mốc cũ sẽ không có tác dụng.
+ */
+@Service
+public class ListingExpiryEngine {
+
+    private static final Logger logger = LoggerFactory.getLogger(ListingExpiryEngine.class);
+
+    // Số bài tối đa trong một câu UPDATE (giữ dưới giới hạn 2100 tham số của SQL Server)
+    private static final int BATCH_SIZE = 200;
+    // Thời gian chờ trước khi thử lại một lô bị lỗi
+    private static final long RETRY_DELAY_MS = 30_000;
+
+    private final ListingRepository listingRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final DelayQueue<ExpiryEntry> queue = new DelayQueue<>();
+    private volatile Thread worker;
+
+    public ListingExpiryEngine(ListingRepository listingRepository, ApplicationEventPublisher eventPublisher) {
+        this.listingRepository = listingRepository;
+        this.eventPublisher = eventPublisher;
+    }
+
+    /**
+     * Đăng ký mốc hết hạn cho một bài đăng (gọi khi duyệt bài hoặc gia hạn).
+     */
+    public void schedule(Integer listingId, Date expiryDate) {
+        if (listingId == null || expiryDate == null) {
+            return;
+        }
+        queue.add(new ExpiryEntry(listingId, expiryDate.getTime()));
+    }
+
+    public int pendingCount() {
+        return queue.size();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        rebuild();
+        Thread thread = new Thread(this::runLoop, "listing-expiry");
+        thread.setDaemon(true);
+        worker = thread;
+        thread.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        Thread thread = worker;
+        worker = null;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * Nạp lại toàn bộ mốc hết hạn của các bài ACTIVE từ DB.
+     * Bài đã quá hạn trong lúc ứng dụng tắt sẽ được xử lý ngay ở lô đầu tiên.
+     */
+    void rebuild() {
+        queue.clear();
+        List<ListingExpiryProjection> rows = listingRepository.findActiveExpiries();
+        for (ListingExpiryProjection row : rows) {
+            schedule(row.getListingID(), row.getExpiryDate());
+        }
+        logger.info("Listing expiry engine loaded {} active listings", rows.size());
+    }
+
+    private void runLoop() {
+        while (worker == Thread.currentThread()) {
+            List<ExpiryEntry> batch = new ArrayList<>();
+            try {
+                batch.add(queue.take());
+                queue.drainTo(batch, BATCH_SIZE - 1);
+                expire(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                logger.error("Failed to expire {} listings, retrying later", batch.size(), e);
+                long retryAt = System.currentTimeMillis() + RETRY_DELAY_MS;
+                batch.forEach(entry -> queue.add(new ExpiryEntry(entry.listingId, retryAt)));
+            }
+        }
+    }
+
+    private void expire(List<ExpiryEntry> batch) {
+        Set<Integer> ids = new LinkedHashSet<>();
+        batch.forEach(entry -> ids.add(entry.listingId));
+        int updated = listingRepository.expireDueListings(ids, new Date());
+        if (updated > 0) {
+            logger.info("Expired {} listings", updated);
+            eventPublisher.publishEvent(new ListingChangedEvent(ids));
+        }
+    }
+
+    private static final class ExpiryEntry implements Delayed {
+        private final Integer listingId;
+        private final long expiresAtMillis;
+
+        private ExpiryEntry(Integer listingId, long expiresAtMillis) {
+            this.listingId = listingId;
+            this.expiresAtMillis = expiresAtMillis;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(expiresAtMillis - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            if (other instanceof ExpiryEntry entry) {
+                return Long.compare(expiresAtMillis, entry.expiresAtMillis);
+            }
+            return Long.compare(getDelay(TimeUnit.MILLISECONDS), other.getDelay(TimeUnit.MILLISECONDS));
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package com.evtrading.swp391.service;
+
+import com.evtrading.swp391.entity.Complaint;
+import com.evtrading.swp391.entity.Listing;
+import com.evtrading.swp391.entity.ListingImage;
+import com.evtrading.swp391.event.ListingChangedEvent;
+import com.evtrading.swp391.event.ListingScanRequestedEvent;
+import com.evtrading.swp391.repository.ComplaintRepository;
+import com.evtrading.swp391.repository.ListingImageRepository;
+import com.evtrading.swp391.repository.ListingRepository;
+import com.evtrading.swp391.util.ImageFingerprint;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Kiểm duyệt tự động bài đăng ngoài request thread.
+ *
+ * Bài mới/sửa lại được lưu ở PENDING_SCAN. Sau commit, id được đưa vào một hàng đợi có giới hạn do
+ * một nhóm worker xử lý: mỗi worker chạy song song các bước của SpamFilterService rồi chuyển bài sang
+ * PENDING (chờ moderator duyệt) hoặc FLAGGED kèm Complaint tự động.
+ *
+ * Hàng đợi chỉ nằm trong bộ nhớ; các bài còn PENDING_SCAN (hàng đợi đầy, lỗi, ứng dụng khởi động lại)
+ * được quét lại từ DB khi khởi động và định kỳ.
+ *
+ * Metric: listing.moderation.queue.depth, listing.moderation.in.flight (gauge),
+ * listing.moderation.stage{stage} (thời gian từng bước), listing.moderation.scan{outcome}
+ * (từ lúc vào hàng đợi tới khi có kết quả).
+ */
+@Service
+public class ListingModerationPipeline {
+
+    public static final String STATUS_PENDING_SCAN = "PENDING_SCAN";
+
+    private static final Logger logger = LoggerFactory.getLogger(ListingModerationPipeline.class);
+
+    private final ListingRepository listingRepository;
+    private final ListingImageRepository listingImageRepository;
+    private final ComplaintRepository complaintRepository;
+    private final SpamFilterService spamFilterService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+
+    private final ThreadPoolExecutor workers;
+    // Các bước kiểm tra chủ yếu chờ DB nên chạy trên virtual thread
+    private final ExecutorService stageExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    // listingID -> thời điểm vào hàng đợi (nanoTime); tránh đưa một bài vào hàng đợi hai lần
+    private final Map<Integer, Long> inFlight = new ConcurrentHashMap<>();
+    private final Map<SpamFilterService.Stage, Timer> stageTimers = new EnumMap<>(SpamFilterService.Stage.class);
+
+    public ListingModerationPipeline(ListingRepository listingRepository,
+                                     ListingImageRepository listingImageRepository,
+                                     ComplaintRepository complaintRepository,
+                                     SpamFilterService spamFilterService,
+                                     ApplicationEventPublisher eventPublisher,
+                                     TransactionTemplate transactionTemplate,
+                                     MeterRegistry meterRegistry,
+                                     @Value("${app.moderation.workers:4}") int workerCount,
+                                     @Value("${app.moderation.queue-capacity:1000}") int queueCapacity) {
+        this.listingRepository = listingRepository;
+        this.listingImageRepository = listingImageRepository;
+        this.complaintRepository = complaintRepository;
+        this.spamFilterService = spamFilterService;
+        this.eventPublisher = eventPublisher;
+        this.transactionTemplate = transactionTemplate;
+        this.meterRegistry = meterRegistry;
+
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(workerCount, workerCount, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), r -> {
+                    Thread thread = new Thread(r, "listing-moderation-" + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+
+        Gauge.builder("listing.moderation.queue.depth", workers, e -> e.getQueue().size()).register(meterRegistry);
+        Gauge.builder("listing.moderation.in.flight", inFlight, Map::size).register(meterRegistry);
+        for (SpamFilterService.Stage stage : SpamFilterService.Stage.values()) {
+            stageTimers.put(stage, Timer.builder("listing.moderation.stage")
+                    .tag("stage", stage.name().toLowerCase(Locale.ROOT))
+                    .register(meterRegistry));
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onScanRequested(ListingScanRequestedEvent event) {
+        enqueue(event.getListingId());
+    }
+
+    /**
+     * Đưa lại vào hàng đợi mọi bài còn PENDING_SCAN trong DB (khi khởi động và mỗi phút).
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelay = 60000, initialDelay = 60000)
+    public void requeuePending() {
+        List<Integer> ids = listingRepository.findIdsByStatus(STATUS_PENDING_SCAN);
+        int queued = 0;
+        for (Integer id : ids) {
+            if (enqueue(id)) {
+                queued++;
+            }
+        }
+        if (queued > 0) {
+            logger.info("Re-queued {} listings waiting for moderation scan", queued);
+        }
+    }
+
+    public int queueDepth() {
+        return workers.getQueue().size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdownNow();
+        stageExecutor.shutdownNow();
+    }
+
+    private boolean enqueue(Integer listingId) {
+        if (listingId == null || inFlight.putIfAbsent(listingId, System.nanoTime()) != null) {
+            return false;
+        }
+        try {
+            workers.execute(() -> scan(listingId));
+            return true;
+        } catch (RejectedExecutionException e) {
+            // Hàng đợi đầy: bài vẫn ở PENDING_SCAN, lần quét định kỳ sau sẽ đưa vào lại
+            inFlight.remove(listingId);
+            logger.warn("Moderation queue full, listing {} deferred", listingId);
+            return false;
+        }
+    }
+
+    private void scan(Integer listingId) {
+        String outcome = "error";
+        try {
+            outcome = process(listingId);
+        } catch (RuntimeException e) {
+            logger.error("Moderation scan failed for listing {}, will retry", listingId, e);
+        } finally {
+            Long queuedAt = inFlight.remove(listingId);
+            if (queuedAt != null) {
+                Timer.builder("listing.moderation.scan").tag("outcome", outcome).register(meterRegistry)
+                        .record(System.nanoTime() - queuedAt, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    private String process(Integer listingId) {
+        ScanInput input = transactionTemplate.execute(tx -> loadInput(listingId));
+        if (input == null) {
+            return "skipped";
+        }
+
+        List<CompletableFuture<List<String>>> futures = new ArrayList<>();
+        for (SpamFilterService.Stage stage : SpamFilterService.Stage.values()) {
+            futures.add(CompletableFuture.supplyAsync(() -> stageTimers.get(stage).record(
+                    () -> spamFilterService.check(stage, input.listing(), input.imageUrls(), input.fingerprints())),
+                    stageExecutor));
+        }
+        List<String> reasons = new ArrayList<>();
+        for (CompletableFuture<List<String>> future : futures) {
+            reasons.addAll(future.join());
+        }
+
+        Boolean applied = transactionTemplate.execute(tx -> applyResult(listingId, reasons));
+        if (!Boolean.TRUE.equals(applied)) {
+            return "skipped";
+        }
+        return reasons.isEmpty() ? "pending" : "flagged";
+    }
+
+    // Đọc bài và ảnh trong transaction; null nếu bài không còn chờ quét
+    private ScanInput loadInput(Integer listingId) {
+        Listing listing = listingRepository.findById(listingId).orElse(null);
+        if (listing == null || !STATUS_PENDING_SCAN.equals(listing.getStatus())) {
+            return null;
+        }
+        List<String> urls = new ArrayList<>();
+        List<ImageFingerprint> fingerprints = new ArrayList<>();
+        for (ListingImage image : listingImageRepository.findByListingListingID(listingId)) {
+            if (image.getImageURL() != null) {
+                urls.add(image.getImageURL());
+            }
+            if (image.getContentHash() != null) {
+                fingerprints.add(new ImageFingerprint(image.getContentHash(), image.getPerceptualHash()));
+            }
+        }
+        return new ScanInput(listing, urls, fingerprints);
+    }
+
+    // Chỉ áp kết quả nếu bài vẫn còn PENDING_SCAN (người bán có thể đã xóa bài trong lúc quét)
+    private Boolean applyResult(Integer listingId, List<String> reasons) {
+        Listing listing = listingRepository.findById(listingId).orElse(null);
+        if (listing == null || !STATUS_PENDING_SCAN.equals(listing.getStatus())) {
+            return false;
+        }
+        boolean flagged = !reasons.isEmpty();
+        listing.setStatus(flagged ? "FLAGGED" : "PENDING");
+        listingRepository.save(listing);
+
+        // Nếu flagged, tạo complaint tự động (nếu chưa có complaint cho bài đăng này)
+        if (flagged && !complaintRepository.existsByListingListingID(listingId)) {
+            Complaint c = new Complaint();
+            c.setUser(listing.getUser());
+            c.setListing(listing);
+            c.setContent("Automated spam detection: " + String.join("; ", reasons));
+            c.setStatus("Pending");
+            c.setCreatedAt(new Date());
+            complaintRepository.save(c);
+        }
+        eventPublisher.publishEvent(ListingChangedEvent.of(listingId));
+        return true;
+    }
+
+    private record ScanInput(Listing listing, List<String> imageUrls, List<ImageFingerprint> fingerprints) {
+    }
+}
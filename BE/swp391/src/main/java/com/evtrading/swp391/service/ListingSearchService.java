@@ -1,5 +1,8 @@
 package com.evtrading.swp391.service;
 
+import com.evtrading.swp391.dto.CursorPageDTO;
+import com.evtrading.swp391.dto.FacetedPage;
+import com.evtrading.swp391.dto.ListingFacetsDTO;
 import com.evtrading.swp391.dto.ListingResponseDTO;
 import com.evtrading.swp391.dto.ListingSearchCriteria;
 import com.evtrading.swp391.entity.Listing;
@@ -7,39 +10,212 @@ import com.evtrading.swp391.entity.ListingImage;
 import com.evtrading.swp391.mapper.ListingMapper;
 import com.evtrading.swp391.repository.ListingImageRepository;
 import com.evtrading.swp391.repository.ListingRepository;
+import com.evtrading.swp391.search.ListingCatalogSnapshot;
+import com.evtrading.swp391.search.ListingCursor;
+import com.evtrading.swp391.search.ListingFacetCounter;
+import com.evtrading.swp391.search.ListingKeywordIndex;
+import com.evtrading.swp391.search.ListingSearchCache;
 import com.evtrading.swp391.specification.ListingSpecifications;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 @Service
 public class ListingSearchService {
 
+    // Số id tối đa đưa vào IN (...) — SQL Server giới hạn 2100 tham số mỗi câu lệnh
+    private static final int MAX_KEYWORD_CANDIDATES = 2000;
+    private static final int MAX_CURSOR_PAGE_SIZE = 100;
+
+    // Cùng fetch plan với Listing.card, dùng cho truy vấn fluent (findBy)
+    private static final List<String> CARD_FETCH_PATHS =
+        List.of("user", "user.role", "category", "brand", "vehicle", "battery");
+
     @Autowired
     private ListingRepository listingRepository;
-    
+
     @Autowired
     private ListingImageRepository listingImageRepository;
-    
+
     @Autowired
     private ListingMapper listingMapper;
 
     @Autowired
-    private ListingService listingService;
+    private ListingKeywordIndex listingKeywordIndex;
+
+    @Autowired
+    private ListingCatalogSnapshot listingCatalogSnapshot;
+
+    @Autowired
+    private ListingSearchCache listingSearchCache;
 
     public Page<ListingResponseDTO> search(ListingSearchCriteria criteria, Pageable pageable, boolean isModerator) {
-        listingService.refreshExpiredListings();
-        Page<Listing> page = listingRepository.findAll(
-            ListingSpecifications.build(criteria, isModerator), 
-            pageable
+        return search(criteria, pageable, isModerator, false);
+    }
+
+    /**
+     * Như search(criteria, pageable, isModerator); khi includeFacets = true, kết quả là FacetedPage
+     * kèm số bài theo category, brand, khoảng giá và năm, đếm trên cùng tập bài khớp với trang trả về.
+     */
+    public Page<ListingResponseDTO> search(ListingSearchCriteria criteria, Pageable pageable, boolean isModerator,
+                                           boolean includeFacets) {
+        return listingSearchCache.get(
+            ListingSearchCache.Key.forSearch(criteria, pageable, isModerator, includeFacets),
+            () -> searchUncached(criteria, pageable, isModerator, includeFacets));
+    }
+
+    private Page<ListingResponseDTO> searchUncached(ListingSearchCriteria criteria, Pageable pageable,
+                                                    boolean isModerator, boolean includeFacets) {
+        Page<ListingResponseDTO> fromSnapshot = searchSnapshot(criteria, pageable, isModerator, includeFacets);
+        if (fromSnapshot != null) {
+            return fromSnapshot;
+        }
+
+        Set<Integer> keywordCandidates = resolveKeywordCandidates(criteria, isModerator);
+        if (keywordCandidates != null && keywordCandidates.isEmpty()) {
+            return new FacetedPage<>(List.of(), pageable, 0,
+                includeFacets ? new ListingFacetCounter().toDto() : null);
+        }
+
+        Specification<Listing> spec = ListingSpecifications.build(criteria, isModerator, keywordCandidates);
+        Slice<Listing> page;
+        long total;
+        ListingFacetsDTO facets = null;
+        if (includeFacets) {
+            // Một câu SELECT các cột facet với cùng spec cho cả facet lẫn tổng số bài, nên hai số luôn khớp nhau;
+            // trang chỉ cần lấy dữ liệu, không chạy thêm câu COUNT
+            ListingFacetCounter counter = listingRepository.countFacets(spec);
+            facets = counter.toDto();
+            total = counter.total();
+            page = listingRepository.findBy(spec, q -> q.slice(pageable));
+        } else {
+            Page<Listing> counted = listingRepository.findAll(spec, pageable);
+            total = counted.getTotalElements();
+            page = counted;
+        }
+
+        Map<Integer, List<ListingImage>> imagesByListing = listingImageRepository.findGroupedByListingIds(
+            page.map(Listing::getListingID).getContent()
         );
-        
-        return page.map(listing -> {
-            List<ListingImage> images = listingImageRepository.findByListingListingID(listing.getListingID());
-            return listingMapper.toDto(listing, images);
-        });
+        List<ListingResponseDTO> content = page.map(listing -> listingMapper.toDto(listing,
+            imagesByListing.getOrDefault(listing.getListingID(), List.of()))).getContent();
+        return new FacetedPage<>(content, pageable, total, facets);
+    }
+
+    /**
+     * Trả lời bằng ListingCatalogSnapshot (lọc trong bộ nhớ, DB chỉ nạp các bài của trang).
+     * Trả về null nếu không phục vụ được: moderator, bản chụp hoặc chỉ mục keyword chưa dựng lần đầu,
+     * hoặc kiểu sort không hỗ trợ. Khi bản chụp đang chờ dựng lại, kết quả vẫn lấy từ các cột cũ
+     * (ListingSearchCache xóa lại các mục này khi nhận ListingCatalogRebuiltEvent).
+     */
+    private Page<ListingResponseDTO> searchSnapshot(ListingSearchCriteria criteria, Pageable pageable,
+                                                    boolean isModerator, boolean includeFacets) {
+        if (isModerator || !listingCatalogSnapshot.isReady()) {
+            return null;
+        }
+        Set<Integer> keywordCandidates = null;
+        String keyword = criteria.getKeyword();
+        if (keyword != null && !keyword.isBlank()) {
+            if (!listingKeywordIndex.isReady()) {
+                return null;
+            }
+            keywordCandidates = listingKeywordIndex.search(keyword);
+        }
+        ListingCatalogSnapshot.CatalogPage hit = listingCatalogSnapshot.query(criteria, keywordCandidates, pageable,
+            includeFacets);
+        if (hit == null) {
+            return null;
+        }
+
+        Map<Integer, Listing> byId = new HashMap<>();
+        listingRepository.findByListingIDIn(hit.listingIds()).forEach(l -> byId.put(l.getListingID(), l));
+        Map<Integer, List<ListingImage>> imagesByListing = listingImageRepository.findGroupedByListingIds(hit.listingIds());
+        List<ListingResponseDTO> content = new ArrayList<>(hit.listingIds().size());
+        for (Integer id : hit.listingIds()) {
+            Listing listing = byId.get(id);
+            // Bài có thể vừa đổi trạng thái sau khi bản chụp được dựng
+            if (listing != null && "ACTIVE".equals(listing.getStatus())) {
+                content.add(listingMapper.toDto(listing, imagesByListing.getOrDefault(id, List.of())));
+            }
+        }
+        return new FacetedPage<>(content, pageable, hit.total(), hit.facets());
+    }
+
+    /**
+     * Tìm kiếm với phân trang keyset: lọc "sau phần tử cuối của trang trước" thay cho OFFSET
+     * và không chạy COUNT. Thứ tự không bị xô lệch khi có bài mới được thêm trong lúc người dùng cuộn.
+     *
+     * @throws IllegalArgumentException khi sortBy không hỗ trợ, cursor không hợp lệ hoặc size ngoài 1..MAX_CURSOR_PAGE_SIZE
+     */
+    public CursorPageDTO<ListingResponseDTO> searchByCursor(ListingSearchCriteria criteria, String sortBy,
+            Sort.Direction direction, int size, String cursor, boolean isModerator) {
+        if (size < 1 || size > MAX_CURSOR_PAGE_SIZE) {
+            throw new IllegalArgumentException("size must be between 1 and " + MAX_CURSOR_PAGE_SIZE);
+        }
+        Sort sort = ListingCursor.sort(sortBy, direction);
+        ListingCursor.Position position = ListingCursor.decode(cursor, sortBy, direction);
+
+        CursorPageDTO<ListingResponseDTO> result = new CursorPageDTO<>();
+        result.setSize(size);
+
+        Set<Integer> keywordCandidates = resolveKeywordCandidates(criteria, isModerator);
+        if (keywordCandidates != null && keywordCandidates.isEmpty()) {
+            result.setContent(List.of());
+            return result;
+        }
+
+        Specification<Listing> spec = ListingSpecifications.build(criteria, isModerator, keywordCandidates)
+            .and(ListingCursor.after(position, sortBy, direction));
+        // Lấy dư một dòng để biết còn trang sau
+        List<Listing> fetched = listingRepository.findBy(spec, q -> q
+            .sortBy(sort)
+            .limit(size + 1)
+            .project(CARD_FETCH_PATHS)
+            .all());
+        boolean hasNext = fetched.size() > size;
+        List<Listing> listings = hasNext ? fetched.subList(0, size) : fetched;
+
+        Map<Integer, List<ListingImage>> imagesByListing = listingImageRepository.findGroupedByListingIds(
+            listings.stream().map(Listing::getListingID).toList()
+        );
+        result.setContent(listings.stream()
+            .map(listing -> listingMapper.toDto(listing,
+                imagesByListing.getOrDefault(listing.getListingID(), List.of())))
+            .toList());
+        result.setHasNext(hasNext);
+        if (hasNext) {
+            result.setNextCursor(ListingCursor.encode(listings.get(listings.size() - 1), sortBy, direction));
+        }
+        return result;
+    }
+
+    /**
+     * Đổi keyword thành tập listingID ứng viên bằng chỉ mục trong bộ nhớ.
+     * Trả về null khi phải dùng lại điều kiện LIKE: không có keyword, chỉ mục chưa dựng xong,
+     * moderator tìm trên trạng thái khác ACTIVE (chỉ mục chỉ chứa bài ACTIVE) hoặc quá nhiều ứng viên.
+     */
+    private Set<Integer> resolveKeywordCandidates(ListingSearchCriteria criteria, boolean isModerator) {
+        String keyword = criteria.getKeyword();
+        if (keyword == null || keyword.isBlank() || !listingKeywordIndex.isReady()) {
+            return null;
+        }
+        if (isModerator && !"ACTIVE".equalsIgnoreCase(criteria.getStatus())) {
+            return null;
+        }
+        Set<Integer> candidates = listingKeywordIndex.search(keyword);
+        if (candidates != null && candidates.size() > MAX_KEYWORD_CANDIDATES) {
+            return null;
+        }
+        return candidates;
     }
-}
\ No newline at end of file
+}
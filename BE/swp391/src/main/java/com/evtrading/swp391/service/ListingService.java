@@ -2,23 +2,38 @@ package com.evtrading.swp391.service;
 
 import com.evtrading.swp391.dto.*;
 import com.evtrading.swp391.entity.*;
+import com.evtrading.swp391.event.ListingChangedEvent;
+import com.evtrading.swp391.event.ListingCreatedEvent;
+import com.evtrading.swp391.event.ListingScanRequestedEvent;
 import com.evtrading.swp391.mapper.ListingMapper;
 import com.evtrading.swp391.repository.*;
-import com.evtrading.swp391.util.VnpayUtil;
+import com.evtrading.swp391.search.ListingDetailCache;
+import com.evtrading.swp391.search.ListingSearchCache;
+import com.evtrading.swp391.storage.ImageStorage;
+import com.evtrading.swp391.util.ImageFingerprint;
+import com.evtrading.swp391.util.VnpaySigner;
 import jakarta.transaction.Transactional;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 @Service
@@ -46,44 +61,84 @@ public class ListingService {
     private ListingImageRepository listingImageRepository;
 
     @Autowired
-    private CloudinaryService cloudinaryService;
+    private ImageStorage imageStorage;
 
     @Autowired
     private ListingMapper listingMapper;
 
     @Autowired
-    private SpamFilterService spamFilterService;
+    private TransactionRepository transactionRepository;
 
     @Autowired
-    private ComplaintRepository complaintRepository;
+    private PaymentRepository paymentRepository;
 
     @Autowired
-    private TransactionRepository transactionRepository;
+    private SystemConfigRepository systemConfigRepository; // Giả sử bạn có repo này
 
     @Autowired
-    private PaymentRepository paymentRepository;
+    private ListingExpiryEngine listingExpiryEngine;
 
     @Autowired
-    private SystemConfigRepository systemConfigRepository; // Giả sử bạn có repo này
+    private ModerationQueueService moderationQueueService;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private ListingSearchCache listingSearchCache;
+
+    @Autowired
+    private ListingDetailCache listingDetailCache;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
 
     private static final int DEFAULT_FREE_LISTING_DAYS = 7;
     private static final int DEFAULT_EXTEND_PRICE_PER_DAY = 5000;
+    // Số id tối đa trong một thao tác hàng loạt (giữ dưới giới hạn 2100 tham số của SQL Server)
+    private static final int MAX_BULK_SIZE = 500;
+
+    @Autowired
+    private VnpaySigner vnpaySigner;
 
     // Thêm các giá trị từ application.properties
     @Value("${vnpay.tmnCode}")
     private String vnpTmnCode;
-    @Value("${vnpay.hashSecret}")
-    private String vnpHashSecret;
     @Value("${vnpay.payUrl}")
     private String vnpPayUrl;
     @Value("${vnpay.returnUrl}")
     private String vnpReturnUrl;
 
     /**
-     * Tạo một bài đăng mới
+     * Tạo một bài đăng mới.
+     *
+     * Chia hai pha để không giữ kết nối DB trong lúc upload: pha 1 upload ảnh lên ImageStorage (không transaction),
+     * pha 2 chạy spam filter và lưu listing + ảnh trong một transaction ngắn. Nếu pha 2 lỗi,
+     * các ảnh vừa upload bị xóa lại.
      */
-    @Transactional
     public ListingResponseDTO createListing(ListingRequestDTO dto, List<MultipartFile> images, String username) {
+        if (dto.getVehicle() == null && dto.getBattery() == null) {
+            throw new RuntimeException("Either vehicle or battery information must be provided");
+        }
+
+        List<ImageStorage.StoredImage> uploaded = images != null
+                ? imageStorage.storeAll(images)
+                : List.of();
+        List<String> imageUrls = images != null
+                ? uploaded.stream().map(ImageStorage.StoredImage::url).toList()
+                : dto.getImageURLs();
+
+        try {
+            Map<String, ImageFingerprint> fingerprints = fingerprintsByUrl(uploaded);
+            return transactionTemplate.execute(tx -> persistNewListing(dto, imageUrls, fingerprints, username));
+        } catch (RuntimeException e) {
+            imageStorage.deleteQuietly(uploaded);
+            throw e;
+        }
+    }
+
+    private ListingResponseDTO persistNewListing(ListingRequestDTO dto, List<String> imageUrls,
+            Map<String, ImageFingerprint> fingerprints, String username) {
         // 1. Lấy thông tin người dùng
         User user = userRepository.findByUsername(username)
                 .orElseThrow(() -> new UsernameNotFoundException("User not found with username: " + username));
@@ -115,7 +170,7 @@ public class ListingService {
         listing.setTitle(dto.getTitle());
         listing.setDescription(dto.getDescription());
         listing.setPrice(dto.getPrice());
-        listing.setStatus("PENDING"); // Trạng thái mặc định khi tạo mới
+        listing.setStatus(ListingModerationPipeline.STATUS_PENDING_SCAN); // Chờ kiểm duyệt tự động
         listing.setCreatedAt(new Date());
     listing.setExtendedTimes(0);
 
@@ -130,33 +185,15 @@ public class ListingService {
             listing.setBattery(battery);
         }
 
-        // Prepare image URLs
-        List<String> imageUrls = images != null ? cloudinaryService.uploadImages(images) : dto.getImageURLs();
-
-        // Run spam filter BEFORE saving final listing
-        SpamFilterService.SpamResult spamResult = spamFilterService.check(listing, imageUrls);
-        if (spamResult.flagged) {
-            // Mark listing as flagged/pending review
-            listing.setStatus("FLAGGED");
-        }
-
-        // 5. Lưu Listing (even if flagged)
+        // 5. Lưu Listing; spam filter chạy bất đồng bộ trong ListingModerationPipeline sau khi commit
         Listing savedListing = listingRepository.save(listing);
+        eventPublisher.publishEvent(ListingChangedEvent.of(savedListing.getListingID()));
+        eventPublisher.publishEvent(new ListingCreatedEvent(savedListing.getListingID(), user.getUserID(), savedListing.getCreatedAt()));
+        eventPublisher.publishEvent(new ListingScanRequestedEvent(savedListing.getListingID()));
 
         // Save images
-        List<ListingImage> listingImages = saveListingImages(savedListing, imageUrls, dto.getPrimaryImageIndex());
-
-        // If flagged, create automated complaint for moderators to review
-        if (spamResult.flagged) {
-            Complaint c = new Complaint();
-            c.setUser(user); // reporter is system; using the listing owner as reference here might be
-                             // ambiguous
-            c.setListing(savedListing);
-            c.setContent("Automated spam detection: " + String.join("; ", spamResult.reasons));
-            c.setStatus("Pending");
-            c.setCreatedAt(new Date());
-            complaintRepository.save(c);
-        }
+        List<ListingImage> listingImages = saveListingImages(savedListing, imageUrls, dto.getPrimaryImageIndex(),
+                fingerprints);
 
         return convertToListingResponseDTO(savedListing, listingImages);
     }
@@ -165,10 +202,15 @@ public class ListingService {
      * Lấy chi tiết một bài đăng
      */
     public ListingResponseDTO getListingById(Integer id) {
+        return listingDetailCache.get(id, this::loadListingById);
+    }
+
+    private ListingResponseDTO loadListingById(Integer id) {
         Listing listing = listingRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("Listing not found with id: " + id));
 
-    listing = refreshListingStatus(listing);
+        // Chỉ đọc: hiển thị EXPIRED nếu đã quá hạn, việc cập nhật DB do ListingExpiryEngine đảm nhận
+        applyExpiredView(listing);
 
         List<ListingImage> images = listingImageRepository.findByListingListingID(id);
 
@@ -176,17 +218,49 @@ public class ListingService {
     }
 
     /**
-     * Cập nhật một bài đăng
+     * Cập nhật một bài đăng.
+     *
+     * Giống createListing: kiểm tra quyền trước, upload ảnh mới ngoài transaction, rồi lưu thay đổi
+     * trong một transaction ngắn (kiểm tra lại trạng thái/quyền vì bài có thể vừa đổi). Lỗi ở bước lưu
+     * sẽ xóa các ảnh vừa upload.
      */
-    @Transactional
     public ListingResponseDTO updateListing(Integer listingId, ListingRequestDTO dto, List<MultipartFile> images,
             String username) {
-        Listing listing = listingRepository.findById(listingId)
+        Listing current = listingRepository.findById(listingId)
                 .orElseThrow(() -> new RuntimeException("Listing not found with id: " + listingId));
-        
-        System.out.println(">>> [updateListing] Listing owner: " + listing.getUser().getUsername());
+
+        System.out.println(">>> [updateListing] Listing owner: " + current.getUser().getUsername());
         System.out.println(">>> [updateListing] Current user: " + username);
+        checkUpdatable(current, username);
+
+        List<ImageStorage.StoredImage> uploaded = images != null && !images.isEmpty()
+                ? imageStorage.storeAll(images)
+                : List.of();
+        List<String> newImageUrls = images != null && !images.isEmpty()
+                ? uploaded.stream().map(ImageStorage.StoredImage::url).toList()
+                : null;
 
+        try {
+            Map<String, ImageFingerprint> newFingerprints = fingerprintsByUrl(uploaded);
+            return transactionTemplate.execute(
+                    tx -> persistListingUpdate(listingId, dto, newImageUrls, newFingerprints, username));
+        } catch (RuntimeException e) {
+            imageStorage.deleteQuietly(uploaded);
+            throw e;
+        }
+    }
+
+    private static Map<String, ImageFingerprint> fingerprintsByUrl(List<ImageStorage.StoredImage> stored) {
+        Map<String, ImageFingerprint> fingerprints = new HashMap<>();
+        for (ImageStorage.StoredImage image : stored) {
+            if (image.fingerprint() != null) {
+                fingerprints.put(image.url(), image.fingerprint());
+            }
+        }
+        return fingerprints;
+    }
+
+    private void checkUpdatable(Listing listing, String username) {
         // Chỉ cho phép cập nhật nếu trạng thái là FLAGGED hoặc REJECTED
         String status = listing.getStatus();
         if (!"FLAGGED".equals(status) && !"REJECTED".equals(status)) {
@@ -197,6 +271,13 @@ public class ListingService {
         if (!listing.getUser().getUsername().equals(username)) {
             throw new RuntimeException("You don't have permission to update this listing");
         }
+    }
+
+    private ListingResponseDTO persistListingUpdate(Integer listingId, ListingRequestDTO dto,
+            List<String> newImageUrls, Map<String, ImageFingerprint> newFingerprints, String username) {
+        Listing listing = listingRepository.findById(listingId)
+                .orElseThrow(() -> new RuntimeException("Listing not found with id: " + listingId));
+        checkUpdatable(listing, username);
 
         // Cập nhật thông tin cơ bản
         listing.setTitle(dto.getTitle());
@@ -235,41 +316,35 @@ public class ListingService {
         }
 
         // Xử lý hình ảnh mới nếu có
+        List<ListingImage> existingImages = listingImageRepository.findByListingListingID(listingId);
         List<String> imageUrls;
-        if (images != null && !images.isEmpty()) {
-            imageUrls = cloudinaryService.uploadImages(images);
+        if (newImageUrls != null) {
+            imageUrls = newImageUrls;
         } else if (dto.getImageURLs() != null && !dto.getImageURLs().isEmpty()) {
             imageUrls = dto.getImageURLs();
         } else {
-            imageUrls = listingImageRepository.findByListingListingID(listingId)
-                    .stream().map(ListingImage::getImageURL).collect(Collectors.toList());
+            imageUrls = existingImages.stream().map(ListingImage::getImageURL).collect(Collectors.toList());
         }
 
+        // Ảnh giữ lại (cùng URL) giữ nguyên dấu vân tay cũ
+        Map<String, ImageFingerprint> fingerprints = new HashMap<>();
+        for (ListingImage image : existingImages) {
+            if (image.getImageURL() != null && image.getContentHash() != null) {
+                fingerprints.put(image.getImageURL(),
+                        new ImageFingerprint(image.getContentHash(), image.getPerceptualHash()));
+            }
+        }
+        fingerprints.putAll(newFingerprints);
+
         // Xóa hình ảnh cũ và lưu hình ảnh mới
-        updateListingImages(listing, imageUrls, dto.getPrimaryImageIndex());
+        updateListingImages(listing, imageUrls, dto.getPrimaryImageIndex(), fingerprints);
 
-        // Chạy lại spam filter
-        SpamFilterService.SpamResult spamResult = spamFilterService.check(listing, imageUrls);
-        if (spamResult.flagged) {
-            listing.setStatus("FLAGGED");
-        } else {
-            listing.setStatus("PENDING");
-        }
+        // Quét lại bất đồng bộ (ảnh của chính bài này không tính là trùng)
+        listing.setStatus(ListingModerationPipeline.STATUS_PENDING_SCAN);
 
         Listing updatedListing = listingRepository.save(listing);
-
-        // Nếu flagged, tạo complaint tự động (nếu chưa có complaint cho bài đăng này)
-        if (spamResult.flagged) {
-            if (!complaintRepository.existsByListingListingID(listing.getListingID())) {
-                Complaint c = new Complaint();
-                c.setUser(listing.getUser());
-                c.setListing(updatedListing);
-                c.setContent("Automated spam detection: " + String.join("; ", spamResult.reasons));
-                c.setStatus("Pending");
-                c.setCreatedAt(new java.util.Date());
-                complaintRepository.save(c);
-            }
-        }
+        eventPublisher.publishEvent(ListingChangedEvent.of(listingId));
+        eventPublisher.publishEvent(new ListingScanRequestedEvent(listingId));
 
         List<ListingImage> imagesList = listingImageRepository.findByListingListingID(listingId);
         return convertToListingResponseDTO(updatedListing, imagesList);
@@ -282,7 +357,14 @@ public class ListingService {
     public Page<ListingResponseDTO> getListings(String status, Integer userId,
             Integer categoryId, Integer brandId,
             Pageable pageable, boolean isModerator) {
-        refreshExpiredListings();
+        return listingSearchCache.get(
+                ListingSearchCache.Key.forList(status, userId, categoryId, brandId, pageable, isModerator),
+                () -> loadListings(status, userId, categoryId, brandId, pageable, isModerator));
+    }
+
+    private Page<ListingResponseDTO> loadListings(String status, Integer userId,
+            Integer categoryId, Integer brandId,
+            Pageable pageable, boolean isModerator) {
         Page<Listing> listingsPage;
 
         // Nếu là admin/moderator xem bài đăng cụ thể theo status
@@ -325,17 +407,39 @@ public class ListingService {
             }
         }
 
-        return listingsPage.map(listing -> {
-            List<ListingImage> images = listingImageRepository.findByListingListingID(listing.getListingID());
-            return convertToListingResponseDTO(listing, images);
-        });
+        Map<Integer, List<ListingImage>> imagesByListing = listingImageRepository.findGroupedByListingIds(
+                listingsPage.map(Listing::getListingID).getContent());
+        return listingsPage.map(listing -> convertToListingResponseDTO(listing,
+                imagesByListing.getOrDefault(listing.getListingID(), List.of())));
+    }
+
+    /**
+     * Lấy các bài đăng theo danh sách id, giữ nguyên thứ tự (id không tồn tại bị bỏ qua).
+     */
+    public List<ListingResponseDTO> getListingsByIds(List<Integer> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        Map<Integer, Listing> listingsById = listingRepository.findByListingIDIn(ids).stream()
+                .collect(Collectors.toMap(Listing::getListingID, listing -> listing));
+        Map<Integer, List<ListingImage>> imagesByListing = listingImageRepository.findGroupedByListingIds(ids);
+        List<ListingResponseDTO> result = new ArrayList<>(ids.size());
+        for (Integer id : ids) {
+            Listing listing = listingsById.get(id);
+            if (listing != null) {
+                result.add(convertToListingResponseDTO(listing, imagesByListing.getOrDefault(id, List.of())));
+            }
+        }
+        return result;
     }
 
     /**
      * Phê duyệt bài đăng (chỉ Moderator hoặc Admin)
      */
     @Transactional
-    public ListingResponseDTO approveListing(Integer id) {
+    public ListingResponseDTO approveListing(Integer id, String moderator) {
+        // Bài đang được moderator khác giữ trong hàng đợi kiểm duyệt thì không được xử lý chen ngang
+        moderationQueueService.checkNotLeasedByOther(id, moderator);
         Listing listing = listingRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("Listing not found with id: " + id));
 
@@ -360,6 +464,9 @@ public class ListingService {
         listing.setExpiryDate(calendar.getTime());
 
         Listing savedListing = listingRepository.save(listing);
+        listingExpiryEngine.schedule(savedListing.getListingID(), savedListing.getExpiryDate());
+        moderationQueueService.complete(List.of(id));
+        eventPublisher.publishEvent(ListingChangedEvent.of(id));
 
         List<ListingImage> images = listingImageRepository.findByListingListingID(id);
 
@@ -370,7 +477,8 @@ public class ListingService {
      * Từ chối bài đăng (chỉ Moderator hoặc Admin)
      */
     @Transactional
-    public ListingResponseDTO rejectListing(Integer id, String reason) {
+    public ListingResponseDTO rejectListing(Integer id, String reason, String moderator) {
+        moderationQueueService.checkNotLeasedByOther(id, moderator);
         Listing listing = listingRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("Listing not found with id: " + id));
 
@@ -389,12 +497,113 @@ public class ListingService {
         }
 
         Listing savedListing = listingRepository.save(listing);
+        moderationQueueService.complete(List.of(id));
+        eventPublisher.publishEvent(ListingChangedEvent.of(id));
 
         List<ListingImage> images = listingImageRepository.findByListingListingID(id);
 
         return convertToListingResponseDTO(savedListing, images);
     }
 
+    /**
+     * Duyệt hàng loạt các bài PENDING trong một transaction (chỉ Moderator hoặc Admin).
+     * Mọi bài được duyệt dùng chung startDate/expiryDate, cấu hình FREE_LISTING_DAYS chỉ đọc một lần.
+     */
+    @Transactional
+    public BulkModerationResultDTO bulkApproveListings(List<Integer> ids, String moderator) {
+        int freeDays = systemConfigRepository.findByConfigKey("FREE_LISTING_DAYS")
+                .map(config -> parsePositiveInt(config.getConfigValue()))
+                .filter(days -> days > 0)
+                .orElse(DEFAULT_FREE_LISTING_DAYS);
+        Date now = new Date();
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTime(now);
+        calendar.add(Calendar.DATE, freeDays);
+        Date expiryDate = calendar.getTime();
+
+        BulkModerationResultDTO result = applyBulkTransition("approve", ids, moderator, "PENDING"::equals, "ACTIVE",
+                eligible -> listingRepository.approvePending(eligible, now, expiryDate));
+        result.getResults().stream()
+                .filter(item -> item.getOutcome() == BulkModerationResultDTO.Outcome.UPDATED)
+                .forEach(item -> listingExpiryEngine.schedule(item.getId(), expiryDate));
+        return result;
+    }
+
+    /**
+     * Từ chối hàng loạt các bài PENDING trong một transaction (chỉ Moderator hoặc Admin).
+     */
+    @Transactional
+    public BulkModerationResultDTO bulkRejectListings(List<Integer> ids, String reason, String moderator) {
+        String trimmed = reason == null || reason.trim().isEmpty() ? null : reason.trim();
+        return applyBulkTransition("reject", ids, moderator, "PENDING"::equals, "REJECTED",
+                eligible -> listingRepository.rejectPending(eligible, trimmed));
+    }
+
+    /**
+     * Xóa mềm hàng loạt trong một transaction (Admin hoặc Moderator); bài đã DELETED được bỏ qua.
+     */
+    @Transactional
+    public BulkModerationResultDTO bulkDeleteListings(List<Integer> ids, String reason, String moderator) {
+        String trimmed = reason == null || reason.trim().isEmpty() ? null : reason.trim();
+        Date now = new Date();
+        return applyBulkTransition("delete", ids, moderator, status -> !"DELETED".equals(status), "DELETED",
+                eligible -> listingRepository.softDeleteNotDeleted(eligible, trimmed, now));
+    }
+
+    /**
+     * Bỏ qua các bài đang được moderator khác giữ trong hàng đợi kiểm duyệt (LEASED),
+     * đọc và khóa trạng thái hiện tại của cả lô, chạy một câu UPDATE có điều kiện trạng thái cho các bài hợp lệ
+     * rồi trả về kết quả từng id. Vì các dòng đã bị khóa tới hết transaction, câu UPDATE đổi đúng các bài hợp lệ
+     * đã đọc; không suy ra bài nào được cập nhật từ trạng thái cuối (bài có thể vừa được người khác chuyển
+     * sang cùng trạng thái đích với expiryDate khác).
+     * Chỉ phát một ListingChangedEvent cho cả lô.
+     */
+    private BulkModerationResultDTO applyBulkTransition(String action, List<Integer> requestedIds, String moderator,
+            Predicate<String> eligibleStatus, String targetStatus, Function<List<Integer>, Integer> update) {
+        List<Integer> ids = requestedIds == null ? List.of()
+                : requestedIds.stream().filter(Objects::nonNull).distinct().toList();
+        if (ids.isEmpty()) {
+            throw new IllegalArgumentException("ids must not be empty");
+        }
+        if (ids.size() > MAX_BULK_SIZE) {
+            throw new IllegalArgumentException("At most " + MAX_BULK_SIZE + " listings per request");
+        }
+
+        Set<Integer> leased = moderationQueueService.leasedByOthers(ids, moderator);
+        Map<Integer, String> before = new HashMap<>();
+        listingRepository.lockStatusesByListingIDIn(ids)
+                .forEach(row -> before.put(row.getListingID(), row.getStatus()));
+        List<Integer> eligible = ids.stream()
+                .filter(id -> !leased.contains(id) && before.containsKey(id) && eligibleStatus.test(before.get(id)))
+                .toList();
+        int updated = eligible.isEmpty() ? 0 : update.apply(eligible);
+        if (updated != eligible.size()) {
+            // Không thể xảy ra khi các dòng đã bị khóa; rollback thay vì trả về kết quả sai
+            throw new IllegalStateException("Bulk " + action + " updated " + updated + " of " + eligible.size()
+                    + " locked listings");
+        }
+
+        List<BulkModerationResultDTO.Item> items = new ArrayList<>(ids.size());
+        List<Integer> changed = new ArrayList<>();
+        for (Integer id : ids) {
+            if (!before.containsKey(id)) {
+                items.add(new BulkModerationResultDTO.Item(id, BulkModerationResultDTO.Outcome.NOT_FOUND, null));
+            } else if (leased.contains(id)) {
+                items.add(new BulkModerationResultDTO.Item(id, BulkModerationResultDTO.Outcome.LEASED, before.get(id)));
+            } else if (!eligibleStatus.test(before.get(id))) {
+                items.add(new BulkModerationResultDTO.Item(id, BulkModerationResultDTO.Outcome.INVALID_STATUS, before.get(id)));
+            } else {
+                items.add(new BulkModerationResultDTO.Item(id, BulkModerationResultDTO.Outcome.UPDATED, targetStatus));
+                changed.add(id);
+            }
+        }
+        if (!changed.isEmpty()) {
+            moderationQueueService.complete(changed);
+            eventPublisher.publishEvent(new ListingChangedEvent(changed));
+        }
+        return new BulkModerationResultDTO(action, changed.size(), items);
+    }
+
     /**
      * Tạo thanh toán để gia hạn bài đăng
      */
@@ -451,8 +660,8 @@ public class ListingService {
 
         // 6. Tạo URL thanh toán VNPAY
         String ipAddr = "127.0.0.1"; // Lấy IP thực tế từ request nếu cần
-        String paymentUrl = VnpayUtil.createPaymentUrl(
-                vnpTmnCode, vnpHashSecret, vnpPayUrl, vnpReturnUrl,
+        String paymentUrl = vnpaySigner.createPaymentUrl(
+                vnpTmnCode, vnpPayUrl, vnpReturnUrl,
                 totalAmount, txnRef, ipAddr);
 
         // 7. Trả về thông tin thanh toán cho frontend
@@ -490,16 +699,15 @@ public class ListingService {
         listing.setStatus("ACTIVE");
 
         listingRepository.save(listing);
+        listingExpiryEngine.schedule(listingId, listing.getExpiryDate());
+        eventPublisher.publishEvent(ListingChangedEvent.of(listingId));
     }
 
-    @Transactional
-    public void refreshExpiredListings() {
-        List<Listing> expiredListings = listingRepository.findByStatusAndExpiryDateBefore("ACTIVE", new Date());
-        if (expiredListings == null || expiredListings.isEmpty()) {
-            return;
+    private void applyExpiredView(Listing listing) {
+        Date expiry = listing.getExpiryDate();
+        if ("ACTIVE".equalsIgnoreCase(listing.getStatus()) && expiry != null && expiry.before(new Date())) {
+            listing.setStatus("EXPIRED");
         }
-        expiredListings.forEach(listing -> listing.setStatus("EXPIRED"));
-        listingRepository.saveAll(expiredListings);
     }
 
     private Listing refreshListingStatus(Listing listing) {
@@ -516,7 +724,9 @@ public class ListingService {
         }
         if (expiry.before(new Date())) {
             listing.setStatus("EXPIRED");
-            return listingRepository.save(listing);
+            Listing saved = listingRepository.save(listing);
+            eventPublisher.publishEvent(ListingChangedEvent.of(saved.getListingID()));
+            return saved;
         }
         return listing;
     }
@@ -600,7 +810,8 @@ public class ListingService {
         batteryRepository.save(battery);
     }
 
-    private List<ListingImage> saveListingImages(Listing listing, List<String> imageURLs, Integer primaryIndex) {
+    private List<ListingImage> saveListingImages(Listing listing, List<String> imageURLs, Integer primaryIndex,
+            Map<String, ImageFingerprint> fingerprints) {
         if (imageURLs == null || imageURLs.isEmpty()) {
             return new ArrayList<>();
         }
@@ -612,22 +823,29 @@ public class ListingService {
             image.setListing(listing);
             image.setImageURL(imageURLs.get(i));
             image.setIsPrimary(primaryIndex != null && primaryIndex == i);
+            ImageFingerprint fingerprint = fingerprints.get(imageURLs.get(i));
+            if (fingerprint != null) {
+                image.setContentHash(fingerprint.contentHash());
+                image.setPerceptualHash(fingerprint.perceptualHash());
+            }
             images.add(listingImageRepository.save(image));
         }
 
         return images;
     }
 
-    private List<ListingImage> updateListingImages(Listing listing, List<String> imageURLs, Integer primaryIndex) {
+    private List<ListingImage> updateListingImages(Listing listing, List<String> imageURLs, Integer primaryIndex,
+            Map<String, ImageFingerprint> fingerprints) {
         // Xóa hình ảnh cũ
         listingImageRepository.deleteByListingListingID(listing.getListingID());
 
         // Thêm hình ảnh mới
-        return saveListingImages(listing, imageURLs, primaryIndex);
+        return saveListingImages(listing, imageURLs, primaryIndex, fingerprints);
     }
 
     @Transactional
-    public ListingResponseDTO deleteListing(Integer listingId, String reason) {
+    public ListingResponseDTO deleteListing(Integer listingId, String reason, String moderator) {
+        moderationQueueService.checkNotLeasedByOther(listingId, moderator);
         Listing listing = listingRepository.findById(listingId)
                 .orElseThrow(() -> new RuntimeException("Listing not found with id: " + listingId));
 
@@ -640,6 +858,8 @@ public class ListingService {
         listing.setExpiryDate(new Date());
 
         Listing savedListing = listingRepository.save(listing);
+        moderationQueueService.complete(List.of(listingId));
+        eventPublisher.publishEvent(ListingChangedEvent.of(listingId));
         List<ListingImage> images = listingImageRepository.findByListingListingID(listingId);
         return convertToListingResponseDTO(savedListing, images);
     }
@@ -0,0 +1,169 @@
+package com.evtrading.swp391.service;
+
+import com.evtrading.swp391.exception.ListingLeasedException;
+import com.evtrading.swp391.repository.ListingRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Hàng đợi kiểm duyệt có lease: mỗi moderator nhận một lô bài PENDING/FLAGGED và giữ riêng
+ * trong một khoảng thời gian, nên hai moderator không bao giờ xem cùng một bài.
+ *
+ * Bảng lease nằm trong bộ nhớ (listingID -> moderator + hạn), việc giành lease cho từng bài là một
+ * thao tác compute nguyên tử trên ConcurrentHashMap. Lease hết hạn được coi như trả về hàng đợi ngay
+ * và được dọn định kỳ. Chỉ đúng khi chạy một instance ứng dụng.
+ */
+@Service
+public class ModerationQueueService {
+
+    public enum Order {
+        OLDEST_FIRST,
+        // Bài FLAGGED (bị spam filter đánh dấu) trước, sau đó tới PENDING; trong mỗi nhóm bài cũ trước
+        FLAGGED_FIRST
+    }
+
+    public static final int MAX_BATCH_SIZE = 50;
+    private static final int MAX_SCAN_PAGES = 20;
+    private static final Sort OLDEST = Sort.by("createdAt").ascending().and(Sort.by("listingID"));
+
+    private final ListingRepository listingRepository;
+    private final Duration leaseDuration;
+    private final Map<Integer, Lease> leases = new ConcurrentHashMap<>();
+
+    public ModerationQueueService(ListingRepository listingRepository,
+                                  @Value("${app.moderation.lease-minutes:10}") long leaseMinutes) {
+        this.listingRepository = listingRepository;
+        this.leaseDuration = Duration.ofMinutes(leaseMinutes);
+    }
+
+    public record Claim(List<Integer> listingIds, Date expiresAt) {
+    }
+
+    private record Lease(String moderator, long expiresAtMillis) {
+        boolean isActive(long now) {
+            return expiresAtMillis > now;
+        }
+    }
+
+    /**
+     * Giành lease cho tối đa size bài chưa ai giữ, theo thứ tự order.
+     * Bài moderator đang giữ sẵn cũng được trả lại (và gia hạn).
+     */
+    public Claim claim(String moderator, int size, Order order) {
+        int limit = Math.max(1, Math.min(size, MAX_BATCH_SIZE));
+        long now = System.currentTimeMillis();
+        long expiresAt = now + leaseDuration.toMillis();
+        List<Integer> claimed = new ArrayList<>(limit);
+
+        List<List<String>> passes = order == Order.FLAGGED_FIRST
+                ? List.of(List.of("FLAGGED"), List.of("PENDING"))
+                : List.of(List.of("PENDING", "FLAGGED"));
+        int pageSize = Math.max(limit * 4, 50);
+        for (List<String> statuses : passes) {
+            for (int page = 0; page < MAX_SCAN_PAGES && claimed.size() < limit; page++) {
+                List<Integer> candidates = listingRepository.findIdsByStatusIn(statuses,
+                        PageRequest.of(page, pageSize, OLDEST));
+                for (Integer id : candidates) {
+                    if (claimed.size() >= limit) {
+                        break;
+                    }
+                    if (tryLease(id, moderator, now, expiresAt)) {
+                        claimed.add(id);
+                    }
+                }
+                if (candidates.size() < pageSize) {
+                    break;
+                }
+            }
+        }
+        return new Claim(claimed, new Date(expiresAt));
+    }
+
+    /**
+     * Gia hạn các lease moderator đang giữ; trả về id được gia hạn (lease đã mất thì bỏ qua).
+     */
+    public Claim renew(String moderator, Collection<Integer> listingIds) {
+        long now = System.currentTimeMillis();
+        long expiresAt = now + leaseDuration.toMillis();
+        List<Integer> renewed = new ArrayList<>();
+        for (Integer id : new LinkedHashSet<>(listingIds)) {
+            Lease lease = leases.computeIfPresent(id, (k, current) ->
+                    current.moderator().equals(moderator) && current.isActive(now)
+                            ? new Lease(moderator, expiresAt) : current);
+            if (lease != null && lease.moderator().equals(moderator) && lease.expiresAtMillis() == expiresAt) {
+                renewed.add(id);
+            }
+        }
+        return new Claim(renewed, new Date(expiresAt));
+    }
+
+    /**
+     * Trả các bài về hàng đợi (chỉ lease của chính moderator).
+     */
+    public void release(String moderator, Collection<Integer> listingIds) {
+        for (Integer id : listingIds) {
+            leases.computeIfPresent(id, (k, current) -> current.moderator().equals(moderator) ? null : current);
+        }
+    }
+
+    /**
+     * Xóa lease sau khi bài đã được xử lý (duyệt, từ chối, xóa), bất kể ai giữ.
+     */
+    public void complete(Collection<Integer> listingIds) {
+        listingIds.forEach(leases::remove);
+    }
+
+    /**
+     * Ném ListingLeasedException nếu bài đang được moderator khác giữ.
+     * Bài không có lease vẫn được xử lý trực tiếp như trước.
+     */
+    public void checkNotLeasedByOther(Integer listingId, String moderator) {
+        Lease lease = leases.get(listingId);
+        if (lease != null && lease.isActive(System.currentTimeMillis()) && !lease.moderator().equals(moderator)) {
+            throw new ListingLeasedException(listingId, lease.moderator());
+        }
+    }
+
+    /**
+     * Các id trong danh sách đang được moderator khác giữ.
+     */
+    public Set<Integer> leasedByOthers(Collection<Integer> listingIds, String moderator) {
+        long now = System.currentTimeMillis();
+        Set<Integer> result = new HashSet<>();
+        for (Integer id : listingIds) {
+            Lease lease = leases.get(id);
+            if (lease != null && lease.isActive(now) && !lease.moderator().equals(moderator)) {
+                result.add(id);
+            }
+        }
+        return result;
+    }
+
+    // Dọn lease hết hạn (chúng đã được coi là trả về hàng đợi, đây chỉ là giải phóng bộ nhớ)
+    @Scheduled(fixedDelay = 60000, initialDelay = 60000)
+    public void evictExpired() {
+        long now = System.currentTimeMillis();
+        leases.values().removeIf(lease -> !lease.isActive(now));
+    }
+
+    private boolean tryLease(Integer listingId, String moderator, long now, long expiresAt) {
+        Lease lease = leases.compute(listingId, (k, current) ->
+                current == null || !current.isActive(now) || current.moderator().equals(moderator)
+                        ? new Lease(moderator, expiresAt) : current);
+        return lease.moderator().equals(moderator) && lease.expiresAtMillis() == expiresAt;
+    }
+}
@@ -11,21 +11,26 @@ import com.evtrading.swp391.entity.Order;
 import com.evtrading.swp391.entity.Transaction;
 import com.evtrading.swp391.entity.Payment;
 import com.evtrading.swp391.entity.User;
+import com.evtrading.swp391.event.ListingChangedEvent;
+import com.evtrading.swp391.exception.ListingUnavailableException;
 import com.evtrading.swp391.repository.ListingRepository;
 import com.evtrading.swp391.repository.OrderRepository;
 import com.evtrading.swp391.repository.TransactionRepository;
 import com.evtrading.swp391.repository.PaymentRepository;
 import com.evtrading.swp391.repository.UserRepository;
 import com.evtrading.swp391.repository.ContractRepository;
-import com.evtrading.swp391.util.VnpayUtil;
+import com.evtrading.swp391.util.VnpaySigner;
 import com.evtrading.swp391.dto.TransactionDTO;
 import com.evtrading.swp391.dto.AdminOrderContractDTO;
 
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
 import jakarta.transaction.Transactional;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Service;
 
@@ -58,10 +63,17 @@ public class OrderService {
     @Autowired
     private ContractRepository contractRepository;
 
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    private VnpaySigner vnpaySigner;
+
     @Value("${vnpay.tmnCode}")
     private String vnpTmnCode;
-    @Value("${vnpay.hashSecret}")
-    private String vnpHashSecret;
     @Value("${vnpay.payUrl}")
     private String vnpPayUrl;
     @Value("${vnpay.returnUrl}")
@@ -88,14 +100,22 @@ public class OrderService {
 
         // Kiểm tra listing có sẵn và người mua không phải người bán
         if (!"ACTIVE".equals(listing.getStatus())) {
-            logger.error("Listing is not available: {}", listing.getStatus());
-            throw new RuntimeException("Listing is not available for purchase");
+            logger.warn("Listing {} is not available: {}", listing.getListingID(), listing.getStatus());
+            throw new ListingUnavailableException(listing.getListingID());
         }
         if (buyer.getUserID().equals(listing.getUser().getUserID())) {
             logger.error("User {} cannot buy their own listing", username);
             throw new RuntimeException("Cannot buy your own listing");
         }
 
+        // Giữ bài bằng một câu UPDATE có điều kiện trước khi ghi bất cứ thứ gì khác: khi nhiều người mua cùng lúc,
+        // chỉ một request đổi được ACTIVE -> PROCESSING, các request còn lại nhận 0 dòng và dừng ngay.
+        // Khóa dòng listing là khóa đầu tiên transaction lấy nên không tạo vòng chờ (deadlock).
+        if (listingRepository.reserveForPurchase(listing.getListingID()) == 0) {
+            logger.warn("Listing {} was reserved by another buyer", listing.getListingID());
+            throw new ListingUnavailableException(listing.getListingID());
+        }
+
         // Tính tổng số tiền
         BigDecimal totalAmount = listing.getPrice().multiply(new BigDecimal(dto.getQuantity()));
 
@@ -122,9 +142,8 @@ public class OrderService {
         transaction.setDueTime(new Date(System.currentTimeMillis() + 7 * 24 * 60 * 60 * 1000));
         Transaction savedTransaction = transactionRepository.save(transaction);
 
-        // Cập nhật Listing status
-        listing.setStatus("PROCESSING");
-        listingRepository.save(listing);
+        // Listing đã được chuyển sang PROCESSING ở bước giữ bài
+        eventPublisher.publishEvent(ListingChangedEvent.of(listing.getListingID()));
 
         // Tạo response DTO
         OrderResponseDTO response = new OrderResponseDTO();
@@ -201,8 +220,8 @@ public class OrderService {
 
         if ("VNPAY".equalsIgnoreCase(dto.getPaymentMethod())) {
             String ipAddr = "127.0.0.1";
-            String paymentUrl = VnpayUtil.createPaymentUrl(
-                    vnpTmnCode, vnpHashSecret, vnpPayUrl, vnpReturnUrl,
+            String paymentUrl = vnpaySigner.createPaymentUrl(
+                    vnpTmnCode, vnpPayUrl, vnpReturnUrl,
                     dto.getAmount(), txnRef, ipAddr);
             response.setPaymentUrl(paymentUrl);
         }
@@ -320,35 +339,26 @@ public class OrderService {
 
     @Transactional
     public void processSuccessfulOrderPayment(Transaction transaction, Payment payment) {
-        transaction.setPaidAmount(transaction.getPaidAmount().add(payment.getAmount()));
-        
+        // Không đọc-cộng-ghi trên entity: hai payment của cùng transaction về cùng lúc sẽ làm mất một lần cộng.
+        // UPDATE nguyên tử khóa dòng transaction, rồi refresh để đọc lại paidAmount/status đã tính
+        transactionRepository.addPaidAmount(transaction.getTransactionID(), payment.getAmount());
+        entityManager.refresh(transaction);
+
+        // Logic cho giao dịch có Order; giao dịch dịch vụ (không có Order) chỉ cần cập nhật số tiền
         Order order = transaction.getOrder();
-        if (order != null) {
-            // Logic cho giao dịch có Order
-            if (transaction.getPaidAmount().compareTo(transaction.getTotalAmount()) >= 0) {
-                transaction.setStatus("FULLY_PAID");
-                order.setStatus("COMPLETED");
-                orderRepository.save(order);
+        if (order != null && "FULLY_PAID".equals(transaction.getStatus())) {
+            order.setStatus("COMPLETED");
+            orderRepository.save(order);
 
-                Listing listing = order.getListing();
-                if (listing != null) {
-                    listing.setStartDate(null);
-                    listing.setExpiryDate(null);
-                    listing.setStatus("SOLD");
-                    listingRepository.save(listing);
-                }
-            } else {
-                transaction.setStatus("PARTIALLY_PAID");
-            }
-        } else {
-            // Logic cho giao dịch dịch vụ (không có Order)
-            if (transaction.getPaidAmount().compareTo(transaction.getTotalAmount()) >= 0) {
-                transaction.setStatus("FULLY_PAID");
-            } else {
-                transaction.setStatus("PARTIALLY_PAID");
+            Listing listing = order.getListing();
+            if (listing != null) {
+                listing.setStartDate(null);
+                listing.setExpiryDate(null);
+                listing.setStatus("SOLD");
+                listingRepository.save(listing);
+                eventPublisher.publishEvent(ListingChangedEvent.of(listing.getListingID()));
             }
         }
-        transactionRepository.save(transaction);
     }
 
     public TransactionReportDTO generateTransactionReportByUserId(
@@ -0,0 +1,172 @@
+package com.evtrading.swp391.service;
+
+import com.evtrading.swp391.entity.SystemConfig;
+import com.evtrading.swp391.event.ListingCreatedEvent;
+import com.evtrading.swp391.event.SystemConfigChangedEvent;
+import com.evtrading.swp391.repository.ListingRepository;
+import com.evtrading.swp391.repository.SystemConfigRepository;
+import com.evtrading.swp391.repository.projection.ListingPostTimeProjection;
+import com.evtrading.swp391.util.SlidingWindowCounter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Giới hạn tần suất đăng bài theo user trên nhiều cửa sổ trượt (5 phút, 1 giờ, 24 giờ), đếm trong bộ nhớ.
+ *
+ * Ngưỡng mỗi cửa sổ lấy từ SystemConfig (spam.maxPostsPer5m, spam.maxPostsPer1h, spam.maxPostsPer24h),
+ * đọc một lần rồi giữ trong bộ nhớ, nạp lại khi có SystemConfigChangedEvent cho các key đó.
+ * Lưu ý: trước đây spam.maxPostsPer24h được áp cho cửa sổ 5 phút; nay nó đúng là ngưỡng 24 giờ.
+ * Bộ đếm được nạp sẵn từ DB khi khởi động và cập nhật theo ListingCreatedEvent sau commit;
+ * trước khi nạp xong thì đếm bằng DB như cũ.
+ */
+@Component
+public class PostingRateLimiter {
+
+    public enum Window {
+        FIVE_MINUTES("spam.maxPostsPer5m", Duration.ofMinutes(5), 5, "5 minutes"),
+        ONE_HOUR("spam.maxPostsPer1h", Duration.ofHours(1), 15, "1 hour"),
+        ONE_DAY("spam.maxPostsPer24h", Duration.ofHours(24), 40, "24 hours");
+
+        private final String configKey;
+        private final Duration length;
+        private final int defaultLimit;
+        private final String label;
+
+        Window(String configKey, Duration length, int defaultLimit, String label) {
+            this.configKey = configKey;
+            this.length = length;
+            this.defaultLimit = defaultLimit;
+            this.label = label;
+        }
+
+        public Duration getLength() {
+            return length;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(PostingRateLimiter.class);
+    // Ngưỡng lớn hơn số này được hạ xuống bằng nó (ring của mỗi user chỉ giữ chừng ấy mốc thời gian)
+    private static final int MAX_TRACKED_POSTS = 256;
+    private static final Duration LONGEST_WINDOW = Window.ONE_DAY.length;
+
+    private final ListingRepository listingRepository;
+    private final SystemConfigRepository systemConfigRepository;
+    private final SlidingWindowCounter<Integer> postsByUser = new SlidingWindowCounter<>(MAX_TRACKED_POSTS);
+    private volatile boolean ready = false;
+    // Ngưỡng đã đọc từ SystemConfig (null = chưa nạp)
+    private volatile Map<Window, Integer> limits;
+
+    public PostingRateLimiter(ListingRepository listingRepository, SystemConfigRepository systemConfigRepository) {
+        this.listingRepository = listingRepository;
+        this.systemConfigRepository = systemConfigRepository;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        Date since = new Date(System.currentTimeMillis() - LONGEST_WINDOW.toMillis());
+        List<ListingPostTimeProjection> posts = listingRepository.findPostTimesSince(since);
+        for (ListingPostTimeProjection post : posts) {
+            if (post.getUserID() != null && post.getCreatedAt() != null) {
+                postsByUser.record(post.getUserID(), post.getCreatedAt().getTime());
+            }
+        }
+        ready = true;
+        logger.info("Posting rate limiter warmed: {} posts from {} users", posts.size(), postsByUser.size());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onListingCreated(ListingCreatedEvent event) {
+        long createdAt = event.getCreatedAt() != null ? event.getCreatedAt().getTime() : System.currentTimeMillis();
+        postsByUser.record(event.getUserId(), createdAt);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onSystemConfigChanged(SystemConfigChangedEvent event) {
+        for (Window window : Window.values()) {
+            if (event.getConfigKeys().contains(window.configKey)) {
+                limits = readLimits();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Các cửa sổ mà user đã đạt ngưỡng tính tới thời điểm postedAt (số bài đăng trước postedAt trong cửa sổ
+     * >= ngưỡng), tức bài đăng lúc postedAt vượt giới hạn. Bản thân bài đăng lúc postedAt không được tính.
+     */
+    public List<Window> exceededWindows(Integer userId, Date postedAt) {
+        Map<Window, Integer> windowLimits = currentLimits();
+        long now = System.currentTimeMillis();
+        long until = postedAt != null ? postedAt.getTime() : now;
+        List<Window> exceeded = new ArrayList<>();
+        for (Window window : Window.values()) {
+            int limit = Math.min(windowLimits.get(window), MAX_TRACKED_POSTS);
+            long since = until - window.length.toMillis();
+            // Bộ đếm chỉ giữ LONGEST_WINDOW gần nhất; cửa sổ cũ hơn (ví dụ khi quét lại bài cũ) thì đếm bằng DB
+            boolean coveredInMemory = ready && since >= now - LONGEST_WINDOW.toMillis();
+            long count = coveredInMemory
+                    ? postsByUser.count(userId, since, until)
+                    : listingRepository.countByUserUserIDAndCreatedAtAfterAndCreatedAtBefore(userId, new Date(since), new Date(until));
+            if (count >= limit) {
+                exceeded.add(window);
+            }
+        }
+        return exceeded;
+    }
+
+    // Dọn các user không đăng bài nào trong cửa sổ dài nhất
+    @Scheduled(fixedDelay = 600000, initialDelay = 600000)
+    public void evictIdleUsers() {
+        postsByUser.evictIdle(System.currentTimeMillis() - LONGEST_WINDOW.toMillis());
+    }
+
+    private Map<Window, Integer> currentLimits() {
+        Map<Window, Integer> current = limits;
+        if (current == null) {
+            // Nạp lười ở lần kiểm tra đầu tiên; nạp trùng khi có tranh chấp cũng vô hại
+            current = readLimits();
+            limits = current;
+        }
+        return current;
+    }
+
+    private Map<Window, Integer> readLimits() {
+        Map<String, String> configured = systemConfigRepository.findByConfigKeyIn(
+                        List.of(Window.FIVE_MINUTES.configKey, Window.ONE_HOUR.configKey, Window.ONE_DAY.configKey))
+                .stream()
+                .filter(c -> c.getConfigValue() != null)
+                .collect(Collectors.toMap(SystemConfig::getConfigKey, SystemConfig::getConfigValue, (a, b) -> a));
+        Map<Window, Integer> parsed = new EnumMap<>(Window.class);
+        for (Window window : Window.values()) {
+            int limit = window.defaultLimit;
+            try {
+                String value = configured.get(window.configKey);
+                if (value != null) limit = Integer.parseInt(value.trim());
+            } catch (NumberFormatException ignored) {}
+            parsed.put(window, Math.max(1, limit));
+        }
+        if (configured.containsKey(Window.ONE_DAY.configKey) && !configured.containsKey(Window.FIVE_MINUTES.configKey)) {
+            logger.warn("{} now limits posts per 24 hours (it used to apply to 5 minutes); set {} for the 5-minute limit",
+                    Window.ONE_DAY.configKey, Window.FIVE_MINUTES.configKey);
+        }
+        logger.info("Loaded posting limits {}", parsed);
+        return parsed;
+    }
+}
@@ -5,11 +5,13 @@ import com.evtrading.swp391.entity.Order;
 import com.evtrading.swp391.entity.Profile;
 import com.evtrading.swp391.entity.Review;
 import com.evtrading.swp391.entity.User;
+import com.evtrading.swp391.event.ListingChangedEvent;
 import com.evtrading.swp391.repository.ListingRepository;
 import com.evtrading.swp391.repository.OrderRepository;
 import com.evtrading.swp391.repository.ReviewRepository;
 import com.evtrading.swp391.repository.UserRepository;
 import com.evtrading.swp391.repository.ProfileRepository;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -25,13 +27,15 @@ public class ReviewService {
     private final ListingRepository listingRepository;
     private final OrderRepository orderRepository;
     private final ProfileRepository profileRepository;
+    private final ApplicationEventPublisher eventPublisher;
 
-    public ReviewService(ReviewRepository reviewRepository, UserRepository userRepository, ListingRepository listingRepository, OrderRepository orderRepository, ProfileRepository profileRepository) {
+    public ReviewService(ReviewRepository reviewRepository, UserRepository userRepository, ListingRepository listingRepository, OrderRepository orderRepository, ProfileRepository profileRepository, ApplicationEventPublisher eventPublisher) {
         this.reviewRepository = reviewRepository;
         this.userRepository = userRepository;
         this.listingRepository = listingRepository;
         this.orderRepository = orderRepository;
         this.profileRepository = profileRepository;
+        this.eventPublisher = eventPublisher;
     }
 
     /**
@@ -64,6 +68,7 @@ public class ReviewService {
         Listing listing = l.get();
         listing.setAverageRating(avg);
         listingRepository.save(listing);
+        eventPublisher.publishEvent(ListingChangedEvent.of(listing.getListingID()));
 
         return Optional.of(saved);
     }
@@ -1,12 +1,18 @@
 package com.evtrading.swp391.service;
 
 import com.evtrading.swp391.entity.Listing;
-import com.evtrading.swp391.entity.ListingImage;
 import com.evtrading.swp391.entity.User;
+import com.evtrading.swp391.event.SystemConfigChangedEvent;
 import com.evtrading.swp391.repository.ListingImageRepository;
 import com.evtrading.swp391.repository.ListingRepository;
 import com.evtrading.swp391.repository.SystemConfigRepository;
+import com.evtrading.swp391.search.ListingNearDuplicateIndex;
+import com.evtrading.swp391.util.ImageFingerprint;
+import com.evtrading.swp391.util.KeywordMatcher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
 
 import java.security.MessageDigest;
 import java.util.*;
@@ -17,14 +23,32 @@ public class SpamFilterService {
     private final ListingRepository listingRepository;
     private final ListingImageRepository listingImageRepository;
     private final SystemConfigRepository systemConfigRepository;
+    private final ListingNearDuplicateIndex nearDuplicateIndex;
+    private final PostingRateLimiter postingRateLimiter;
 
-    //  banned keywords list (could be loaded from SystemConfig)
-    private final List<String> bannedKeywords = List.of("liên hệ ngay", "hot deal", "siêu rẻ", "hot", "contact now", "sale");
+    private static final Logger logger = LoggerFactory.getLogger(SpamFilterService.class);
 
-    public SpamFilterService(ListingRepository listingRepository, ListingImageRepository listingImageRepository, SystemConfigRepository systemConfigRepository) {
+    // Danh sách từ khóa cấm trong SystemConfig, mỗi từ cách nhau bởi dấu phẩy, chấm phẩy hoặc xuống dòng
+    static final String BANNED_KEYWORDS_KEY = "spam.bannedKeywords";
+    private static final Pattern KEYWORD_SEPARATOR = Pattern.compile("[,;\\r\\n]+");
+    // Ngưỡng Jaccard (0..1] để coi title/description là gần trùng
+    static final String NEAR_DUPLICATE_THRESHOLD_KEY = "spam.nearDuplicateThreshold";
+    private static final double DEFAULT_NEAR_DUPLICATE_THRESHOLD = 0.8;
+    // Dùng khi chưa có cấu hình trong DB
+    private static final List<String> DEFAULT_BANNED_KEYWORDS = List.of("liên hệ ngay", "hot deal", "siêu rẻ", "hot", "contact now", "sale");
+
+    // Automaton đã biên dịch, thay nguyên khối khi admin sửa danh sách (null = chưa nạp)
+    private volatile KeywordMatcher bannedKeywords;
+    // Ngưỡng gần trùng đã đọc từ SystemConfig (null = chưa nạp)
+    private volatile Double nearDuplicateThreshold;
+
+    public SpamFilterService(ListingRepository listingRepository, ListingImageRepository listingImageRepository, SystemConfigRepository systemConfigRepository,
+                             ListingNearDuplicateIndex nearDuplicateIndex, PostingRateLimiter postingRateLimiter) {
         this.listingRepository = listingRepository;
         this.listingImageRepository = listingImageRepository;
         this.systemConfigRepository = systemConfigRepository;
+        this.nearDuplicateIndex = nearDuplicateIndex;
+        this.postingRateLimiter = postingRateLimiter;
     }
 
     public static class SpamResult {
@@ -32,61 +56,161 @@ public class SpamFilterService {
         public List<String> reasons = new ArrayList<>();
     }
 
+    /**
+     * Các bước kiểm tra độc lập với nhau, ListingModerationPipeline chạy song song và đo thời gian từng bước.
+     */
+    public enum Stage { TEXT, IMAGES, POSTING_RATE, KEYWORDS }
+
     public SpamResult check(Listing listing, List<String> imageUrls) {
-        SpamResult result = new SpamResult();
+        return check(listing, imageUrls, List.of());
+    }
 
-        // 1) Duplicate title (excluding DELETED and self)
-        long sameTitle = listingRepository.countByTitleAndNotDeletedAndIdNot(listing.getTitle(), listing.getListingID());
-        if (sameTitle > 0) {
-            result.flagged = true;
-            result.reasons.add("Duplicate title");
+    /**
+     * Chạy lần lượt mọi bước trên thread hiện tại.
+     *
+     * @param fingerprints dấu vân tay của các ảnh (rỗng nếu ảnh chỉ được gửi dưới dạng URL)
+     */
+    public SpamResult check(Listing listing, List<String> imageUrls, Collection<ImageFingerprint> fingerprints) {
+        SpamResult result = new SpamResult();
+        for (Stage stage : Stage.values()) {
+            result.reasons.addAll(check(stage, listing, imageUrls, fingerprints));
         }
+        result.flagged = !result.reasons.isEmpty();
+        return result;
+    }
+
+    /**
+     * Chạy một bước, trả về các lý do bị đánh dấu (rỗng nếu không vi phạm).
+     * Chỉ đọc id, title, description, createdAt và user id của listing nên gọi được từ thread khác.
+     */
+    public List<String> check(Stage stage, Listing listing, List<String> imageUrls, Collection<ImageFingerprint> fingerprints) {
+        return switch (stage) {
+            case TEXT -> checkText(listing);
+            case IMAGES -> checkImages(listing, imageUrls, fingerprints);
+            case POSTING_RATE -> checkPostingRate(listing);
+            case KEYWORDS -> checkKeywords(listing);
+        };
+    }
 
-        // 2) Duplicate images by exact URL match
-        if (imageUrls != null) {
-            for (String url : imageUrls) {
-                // check if other listings have same image URL
-                // naive: check all listing images
-                List<ListingImage> hits = listingImageRepository.findAll().stream()
-                        .filter(img -> img.getImageURL() != null && img.getImageURL().equals(url))
-                        .toList();
-                if (!hits.isEmpty()) {
-                    result.flagged = true;
-                    result.reasons.add("Duplicate image URL detected");
-                    break;
-                }
+    // 1) Near-duplicate title/description (excluding DELETED and self) qua chỉ mục MinHash trong bộ nhớ
+    private List<String> checkText(Listing listing) {
+        List<String> reasons = new ArrayList<>();
+        if (nearDuplicateIndex.isReady()) {
+            double threshold = nearDuplicateThreshold();
+            for (ListingNearDuplicateIndex.Match match : nearDuplicateIndex.findNearDuplicates(
+                    listing.getTitle(), listing.getDescription(), listing.getListingID(), threshold)) {
+                reasons.add(String.format(Locale.ROOT, "Near-duplicate %s of listing #%d (similarity %.2f)",
+                        match.field().name().toLowerCase(Locale.ROOT), match.listingId(), match.similarity()));
+            }
+        } else {
+            // Chỉ mục chưa dựng xong (vừa khởi động): quay lại so sánh title chính xác
+            long sameTitle = listingRepository.countByTitleAndNotDeletedAndIdNot(listing.getTitle(), listing.getListingID());
+            if (sameTitle > 0) {
+                reasons.add("Duplicate title");
             }
         }
+        return reasons;
+    }
 
-        // 3) Posting rate
-        // Read threshold from SystemConfig or default to 5 per 24h
-        int threshold = 5;
-        try {
-            var opt = systemConfigRepository.findByConfigKey("spam.maxPostsPer24h");
-            if (opt.isPresent()) threshold = Integer.parseInt(opt.get().getConfigValue());
-        } catch (Exception ignored) {}
-        Calendar cal = Calendar.getInstance();
-        cal.add(Calendar.MINUTE, -5);
-        Date since = cal.getTime();
-        long recentCount = listingRepository.countByUserUserIDAndCreatedAtAfter(listing.getUser().getUserID(), since);
-        if (recentCount >= threshold) {
-            result.flagged = true;
-            result.reasons.add("Too many posts in 5 minutes");
+    // 2) Duplicate images: tra index theo URL, SHA-256 và dHash (một câu cho mỗi loại, không load cả bảng)
+    private List<String> checkImages(Listing listing, List<String> imageUrls, Collection<ImageFingerprint> fingerprints) {
+        if (imageUrls != null && !imageUrls.isEmpty()
+                && listingImageRepository.existsByUrlOnOtherListing(imageUrls, listing.getListingID())) {
+            return List.of("Duplicate image URL detected");
+        }
+        if (hasDuplicateContent(listing, fingerprints)) {
+            // Cùng một ảnh được upload lại dưới URL khác
+            return List.of("Duplicate image content detected");
         }
+        return List.of();
+    }
 
-        // Price anomaly check removed — no longer flagging by price
+    // 3) Posting rate: đếm trong bộ nhớ trên các cửa sổ 5 phút / 1 giờ / 24 giờ tính tới lúc đăng bài
+    private List<String> checkPostingRate(Listing listing) {
+        List<String> reasons = new ArrayList<>();
+        for (PostingRateLimiter.Window window : postingRateLimiter.exceededWindows(
+                listing.getUser().getUserID(), listing.getCreatedAt())) {
+            reasons.add("Too many posts in " + window.getLabel());
+        }
+        return reasons;
+    }
 
-        // 5) Banned keywords in title/description
-        String combined = (listing.getTitle() == null ? "" : listing.getTitle()).toLowerCase() + " " + (listing.getDescription() == null ? "" : listing.getDescription()).toLowerCase();
-        for (String kw : bannedKeywords) {
-            Pattern p = Pattern.compile(Pattern.quote(kw.toLowerCase()));
-            if (p.matcher(combined).find()) {
-                result.flagged = true;
-                result.reasons.add("Banned keyword: " + kw);
-                break;
+    // Price anomaly check removed — no longer flagging by price
+
+    // 5) Banned keywords in title/description: một lần quét, báo mọi từ khóa khớp
+    private List<String> checkKeywords(Listing listing) {
+        String combined = (listing.getTitle() == null ? "" : listing.getTitle()) + "\n" + (listing.getDescription() == null ? "" : listing.getDescription());
+        List<String> reasons = new ArrayList<>();
+        for (String kw : bannedKeywordMatcher().findAll(combined)) {
+            reasons.add("Banned keyword: " + kw);
+        }
+        return reasons;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onSystemConfigChanged(SystemConfigChangedEvent event) {
+        if (event.getConfigKeys().contains(BANNED_KEYWORDS_KEY)) {
+            bannedKeywords = loadBannedKeywords();
+        }
+        if (event.getConfigKeys().contains(NEAR_DUPLICATE_THRESHOLD_KEY)) {
+            nearDuplicateThreshold = readNearDuplicateThreshold();
+        }
+    }
+
+    private double nearDuplicateThreshold() {
+        Double threshold = nearDuplicateThreshold;
+        if (threshold == null) {
+            threshold = readNearDuplicateThreshold();
+            nearDuplicateThreshold = threshold;
+        }
+        return threshold;
+    }
+
+    private double readNearDuplicateThreshold() {
+        try {
+            var opt = systemConfigRepository.findByConfigKey(NEAR_DUPLICATE_THRESHOLD_KEY);
+            if (opt.isPresent()) {
+                double value = Double.parseDouble(opt.get().getConfigValue());
+                if (value > 0 && value <= 1) return value;
             }
+        } catch (Exception ignored) {}
+        return DEFAULT_NEAR_DUPLICATE_THRESHOLD;
+    }
+
+    private KeywordMatcher bannedKeywordMatcher() {
+        KeywordMatcher matcher = bannedKeywords;
+        if (matcher == null) {
+            // Nạp lười ở lần kiểm tra đầu tiên; nạp trùng khi có tranh chấp cũng vô hại
+            matcher = loadBannedKeywords();
+            bannedKeywords = matcher;
         }
+        return matcher;
+    }
 
-        return result;
+    private KeywordMatcher loadBannedKeywords() {
+        List<String> keywords = systemConfigRepository.findByConfigKey(BANNED_KEYWORDS_KEY)
+                .map(config -> config.getConfigValue() == null ? List.<String>of()
+                        : Arrays.asList(KEYWORD_SEPARATOR.split(config.getConfigValue())))
+                .orElse(DEFAULT_BANNED_KEYWORDS);
+        KeywordMatcher matcher = KeywordMatcher.of(keywords);
+        logger.info("Loaded {} banned keywords", matcher.getKeywords().size());
+        return matcher;
+    }
+
+    private boolean hasDuplicateContent(Listing listing, Collection<ImageFingerprint> fingerprints) {
+        if (fingerprints == null || fingerprints.isEmpty()) {
+            return false;
+        }
+        Set<String> contentHashes = new HashSet<>();
+        Set<Long> perceptualHashes = new HashSet<>();
+        for (ImageFingerprint fp : fingerprints) {
+            if (fp.contentHash() != null) contentHashes.add(fp.contentHash());
+            // dHash của ảnh phẳng (gần 0 hoặc -1) trùng với mọi ảnh phẳng khác, chỉ so các hash đủ đặc trưng
+            Long perceptualHash = fp.distinctivePerceptualHash();
+            if (perceptualHash != null) perceptualHashes.add(perceptualHash);
+        }
+        Integer self = listing.getListingID();
+        return (!contentHashes.isEmpty() && listingImageRepository.existsByContentHashOnOtherListing(contentHashes, self))
+                || (!perceptualHashes.isEmpty() && listingImageRepository.existsByPerceptualHashOnOtherListing(perceptualHashes, self));
     }
 }
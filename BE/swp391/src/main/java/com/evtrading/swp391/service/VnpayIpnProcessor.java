@@ -0,0 +1,209 @@
+package com.evtrading.swp391.service;
+
+import com.evtrading.swp391.entity.VnpayIpnMessage;
+import com.evtrading.swp391.event.VnpayIpnReceivedEvent;
+import com.evtrading.swp391.repository.VnpayIpnMessageRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Date;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Áp dụng các IPN VNPAY đã lưu trong hộp thư đến (VnpayIpnMessage) ngoài request thread.
+ *
+ * Có app.vnpay.ipn.workers làn, mỗi làn một thread; IPN được chia làn theo transactionId nên các IPN của
+ * cùng một transaction luôn chạy tuần tự theo thứ tự nhận, và một IPN chỉ chạy khi mọi IPN cũ hơn của
+ * transaction đó đã xong. Lỗi được thử lại với backoff lũy thừa tới app.vnpay.ipn.max-attempts lần rồi
+ * chuyển FAILED để đối soát tay. IPN mới được đưa vào làn ngay sau khi lưu; IPN tới hạn thử lại (hoặc bị
+ * bỏ lỡ do khởi động lại) được quét từ DB định kỳ.
+ *
+ * Metric: vnpay.ipn.inbox.pending, vnpay.ipn.inbox.lag.seconds (tuổi IPN chờ lâu nhất),
+ * vnpay.ipn.processing{outcome} (từ lúc nhận tới khi xử lý xong), vnpay.ipn.retries.
+ */
+@Service
+public class VnpayIpnProcessor {
+
+    public static final String STATUS_PENDING = "PENDING";
+    public static final String STATUS_DONE = "DONE";
+    public static final String STATUS_FAILED = "FAILED";
+
+    private static final Logger logger = LoggerFactory.getLogger(VnpayIpnProcessor.class);
+    private static final int POLL_BATCH_SIZE = 200;
+    private static final long BASE_BACKOFF_MILLIS = 5_000;
+    private static final long MAX_BACKOFF_MILLIS = 10 * 60_000;
+    private static final int MAX_ERROR_LENGTH = 250;
+
+    private final VnpayIpnMessageRepository messageRepository;
+    private final VnpayService vnpayService;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+    private final int maxAttempts;
+
+    private final ExecutorService[] lanes;
+    // Các IPN đang nằm trong làn, tránh quét định kỳ đưa vào hai lần
+    private final Set<Long> queued = ConcurrentHashMap.newKeySet();
+    private final AtomicLong pending = new AtomicLong();
+    private final AtomicLong oldestPendingMillis = new AtomicLong();
+    private final Counter retries;
+
+    public VnpayIpnProcessor(VnpayIpnMessageRepository messageRepository,
+                             VnpayService vnpayService,
+                             TransactionTemplate transactionTemplate,
+                             MeterRegistry meterRegistry,
+                             @Value("${app.vnpay.ipn.workers:4}") int workerCount,
+                             @Value("${app.vnpay.ipn.max-attempts:8}") int maxAttempts) {
+        this.messageRepository = messageRepository;
+        this.vnpayService = vnpayService;
+        this.transactionTemplate = transactionTemplate;
+        this.meterRegistry = meterRegistry;
+        this.maxAttempts = Math.max(1, maxAttempts);
+
+        this.lanes = new ExecutorService[Math.max(1, workerCount)];
+        for (int i = 0; i < lanes.length; i++) {
+            String name = "vnpay-ipn-" + (i + 1);
+            lanes[i] = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, name);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        Gauge.builder("vnpay.ipn.inbox.pending", pending, AtomicLong::get).register(meterRegistry);
+        Gauge.builder("vnpay.ipn.inbox.lag.seconds", oldestPendingMillis,
+                oldest -> oldest.get() == 0 ? 0 : (System.currentTimeMillis() - oldest.get()) / 1000.0)
+                .register(meterRegistry);
+        this.retries = Counter.builder("vnpay.ipn.retries").register(meterRegistry);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onIpnReceived(VnpayIpnReceivedEvent event) {
+        pending.incrementAndGet();
+        oldestPendingMillis.compareAndSet(0, System.currentTimeMillis());
+        enqueue(event.getMessageId(), event.getTransactionId());
+    }
+
+    /**
+     * Đưa vào làn các IPN PENDING đã tới hạn (mới nhận mà bị bỏ lỡ, hoặc tới lượt thử lại) và cập nhật metric.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelay = 15000, initialDelay = 15000)
+    public void pollDue() {
+        for (VnpayIpnMessage message : messageRepository.findDue(new Date(), PageRequest.of(0, POLL_BATCH_SIZE))) {
+            enqueue(message.getMessageID(), message.getTransactionId());
+        }
+        pending.set(messageRepository.countByStatus(STATUS_PENDING));
+        Date oldest = messageRepository.findOldestPendingReceivedAt();
+        oldestPendingMillis.set(oldest != null ? oldest.getTime() : 0);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (ExecutorService lane : lanes) {
+            lane.shutdownNow();
+        }
+    }
+
+    private void enqueue(Long messageId, Integer transactionId) {
+        if (messageId == null || !queued.add(messageId)) {
+            return;
+        }
+        int lane = Math.floorMod(transactionId != null ? transactionId.hashCode() : messageId.hashCode(), lanes.length);
+        try {
+            lanes[lane].execute(() -> {
+                try {
+                    process(messageId);
+                } finally {
+                    queued.remove(messageId);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Đang tắt ứng dụng: IPN vẫn PENDING trong DB, sẽ được quét lại khi khởi động
+            queued.remove(messageId);
+        }
+    }
+
+    private void process(Long messageId) {
+        VnpayIpnMessage message = messageRepository.findById(messageId).orElse(null);
+        if (message == null || !STATUS_PENDING.equals(message.getStatus())) {
+            return;
+        }
+        if (message.getTransactionId() != null && messageRepository.existsByTransactionIdAndStatusAndMessageIDLessThan(
+                message.getTransactionId(), STATUS_PENDING, messageId)) {
+            // Chờ IPN cũ hơn của cùng transaction; lần quét sau sẽ đưa vào lại
+            return;
+        }
+        try {
+            transactionTemplate.executeWithoutResult(tx -> {
+                vnpayService.applyPaymentResult(message.getTxnRef(), message.getResponseCode());
+                markDone(messageId);
+            });
+            recordOutcome(message, "done");
+        } catch (RuntimeException e) {
+            transactionTemplate.executeWithoutResult(tx -> recordFailure(messageId, e));
+        }
+    }
+
+    private void markDone(Long messageId) {
+        VnpayIpnMessage message = messageRepository.findById(messageId).orElseThrow();
+        message.setStatus(STATUS_DONE);
+        message.setAttempts(attemptsOf(message) + 1);
+        message.setProcessedAt(new Date());
+        message.setLastError(null);
+        messageRepository.save(message);
+    }
+
+    private void recordFailure(Long messageId, RuntimeException error) {
+        VnpayIpnMessage message = messageRepository.findById(messageId).orElse(null);
+        if (message == null) {
+            return;
+        }
+        int attempts = attemptsOf(message) + 1;
+        message.setAttempts(attempts);
+        String reason = error.getMessage() != null ? error.getMessage() : error.getClass().getSimpleName();
+        message.setLastError(reason.length() > MAX_ERROR_LENGTH ? reason.substring(0, MAX_ERROR_LENGTH) : reason);
+        if (attempts >= maxAttempts) {
+            message.setStatus(STATUS_FAILED);
+            message.setProcessedAt(new Date());
+            logger.error("VNPAY IPN {} failed after {} attempts, needs manual reconciliation", message.getTxnRef(), attempts, error);
+            recordOutcome(message, "failed");
+        } else {
+            long backoff = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << Math.min(attempts - 1, 20));
+            message.setNextAttemptAt(new Date(System.currentTimeMillis() + backoff));
+            retries.increment();
+            logger.warn("VNPAY IPN {} failed (attempt {}), retrying in {} ms: {}", message.getTxnRef(), attempts, backoff, reason);
+        }
+        messageRepository.save(message);
+    }
+
+    private void recordOutcome(VnpayIpnMessage message, String outcome) {
+        pending.updateAndGet(count -> Math.max(0, count - 1));
+        if (message.getReceivedAt() != null) {
+            Timer.builder("vnpay.ipn.processing").tag("outcome", outcome).register(meterRegistry)
+                    .record(System.currentTimeMillis() - message.getReceivedAt().getTime(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static int attemptsOf(VnpayIpnMessage message) {
+        return message.getAttempts() != null ? message.getAttempts() : 0;
+    }
+}
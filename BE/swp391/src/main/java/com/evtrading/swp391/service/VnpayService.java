@@ -3,17 +3,22 @@ package com.evtrading.swp391.service;
 import com.evtrading.swp391.dto.VnpayCallbackResultDTO;
 import com.evtrading.swp391.entity.Payment;
 import com.evtrading.swp391.entity.Transaction;
+import com.evtrading.swp391.entity.VnpayIpnMessage;
+import com.evtrading.swp391.event.VnpayIpnReceivedEvent;
 import com.evtrading.swp391.repository.PaymentRepository;
 import com.evtrading.swp391.repository.TransactionRepository;
-import com.evtrading.swp391.util.VnpayUtil;
+import com.evtrading.swp391.repository.VnpayIpnMessageRepository;
+import com.evtrading.swp391.util.VnpaySigner;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.Date;
-import java.util.HashMap;
 import java.util.Map;
 
 @Service
@@ -26,35 +31,88 @@ public class VnpayService {
     private final OrderService orderService;
     private final ListingService listingService;
     private final SystemConfigService systemConfigService;
-
-    @Value("${vnpay.hashSecret}")
-    private String vnpHashSecret;
-
-    public VnpayService(PaymentRepository paymentRepository, TransactionRepository transactionRepository, OrderService orderService, ListingService listingService, SystemConfigService systemConfigService) {
+    private final VnpayIpnMessageRepository ipnMessageRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ObjectMapper objectMapper;
+    private final VnpaySigner vnpaySigner;
+
+    public VnpayService(PaymentRepository paymentRepository, TransactionRepository transactionRepository, OrderService orderService, ListingService listingService, SystemConfigService systemConfigService,
+                        VnpayIpnMessageRepository ipnMessageRepository, ApplicationEventPublisher eventPublisher,
+                        ObjectMapper objectMapper, VnpaySigner vnpaySigner) {
         this.paymentRepository = paymentRepository;
         this.transactionRepository = transactionRepository;
         this.orderService = orderService;
         this.listingService = listingService;
         this.systemConfigService = systemConfigService;
+        this.ipnMessageRepository = ipnMessageRepository;
+        this.eventPublisher = eventPublisher;
+        this.objectMapper = objectMapper;
+        this.vnpaySigner = vnpaySigner;
     }
 
+    /**
+     * Callback trình duyệt (return URL): xác thực chữ ký rồi áp dụng kết quả ngay để trả trạng thái cho người dùng.
+     */
     @Transactional
     public VnpayCallbackResultDTO handleVnpayCallback(Map<String, String> params) {
-        String vnpTxnRef = params.get("vnp_TxnRef");
-        String vnpResponseCode = params.get("vnp_ResponseCode");
-        String vnpSecureHash = params.get("vnp_SecureHash");
-
         // 1. Xác thực chữ ký
-        Map<String, String> paramsForHash = new HashMap<>(params);
-        paramsForHash.remove("vnp_SecureHash");
-        String hashData = VnpayUtil.buildHashData(paramsForHash);
-        String myHash = VnpayUtil.hmacSHA512(vnpHashSecret, hashData);
-
-        if (!myHash.equalsIgnoreCase(vnpSecureHash)) {
+        if (!vnpaySigner.verify(params)) {
             logger.error("VNPAY callback: Invalid secure hash!");
             return new VnpayCallbackResultDTO(false, "Chữ ký không hợp lệ", "UNKNOWN");
         }
+        return applyPaymentResult(params.get("vnp_TxnRef"), params.get("vnp_ResponseCode"));
+    }
+
+    /**
+     * IPN từ VNPAY: chỉ xác thực chữ ký và lưu vào hộp thư đến rồi trả lời ngay; VnpayIpnProcessor
+     * áp dụng kết quả sau. IPN trùng vnp_TxnRef (VNPAY gửi lại) được xác nhận mà không lưu thêm.
+     *
+     * @return true nếu đã nhận (VNPAY không cần gửi lại), false nếu chữ ký sai hoặc không có giao dịch
+     */
+    public boolean receiveIpn(Map<String, String> params) {
+        if (!vnpaySigner.verify(params)) {
+            logger.error("VNPAY IPN: Invalid secure hash!");
+            return false;
+        }
+        String vnpTxnRef = params.get("vnp_TxnRef");
+        if (ipnMessageRepository.existsByTxnRef(vnpTxnRef)) {
+            logger.info("VNPAY IPN: Duplicate IPN for txnRef {}", vnpTxnRef);
+            return true;
+        }
+        Payment payment = paymentRepository.findByTxnRef(vnpTxnRef).orElse(null);
+        if (payment == null) {
+            logger.error("VNPAY IPN: Payment not found with txnRef: {}", vnpTxnRef);
+            return false;
+        }
+
+        Date now = new Date();
+        VnpayIpnMessage message = new VnpayIpnMessage();
+        message.setTxnRef(vnpTxnRef);
+        message.setTransactionId(payment.getTransaction().getTransactionID());
+        message.setResponseCode(params.get("vnp_ResponseCode"));
+        message.setPayload(toJson(params));
+        message.setStatus(VnpayIpnProcessor.STATUS_PENDING);
+        message.setAttempts(0);
+        message.setReceivedAt(now);
+        message.setNextAttemptAt(now);
+        try {
+            message = ipnMessageRepository.save(message);
+        } catch (DataIntegrityViolationException e) {
+            // IPN trùng tới cùng lúc: bản kia đã được lưu
+            logger.info("VNPAY IPN: Concurrent duplicate IPN for txnRef {}", vnpTxnRef);
+            return true;
+        }
+        eventPublisher.publishEvent(new VnpayIpnReceivedEvent(message.getMessageID(), message.getTransactionId()));
+        return true;
+    }
 
+    /**
+     * Áp dụng kết quả thanh toán VNPAY (chữ ký đã được xác thực). Payment chỉ được chuyển khỏi PENDING
+     * bằng UPDATE có điều kiện, nên gọi lại nhiều lần (callback + IPN, worker retry) chỉ có tác dụng một lần.
+     * Lỗi nghiệp vụ được ném ra để transaction rollback và worker thử lại.
+     */
+    @Transactional
+    public VnpayCallbackResultDTO applyPaymentResult(String vnpTxnRef, String vnpResponseCode) {
         // 2. Tìm payment bằng txnRef
         Payment payment = paymentRepository.findByTxnRef(vnpTxnRef).orElse(null);
         if (payment == null) {
@@ -72,24 +130,31 @@ public class VnpayService {
         // 4. Xử lý nếu thanh toán thất bại từ VNPAY
         if (!"00".equals(vnpResponseCode)) {
             logger.warn("VNPAY callback: Payment failed, response code: {}", vnpResponseCode);
+            if (paymentRepository.markFailedIfPending(payment.getPaymentID()) == 0) {
+                return new VnpayCallbackResultDTO(true, "Giao dịch đã được xử lý.", payment.getTransaction().getReferenceType());
+            }
             payment.setStatus("FAILED");
-            paymentRepository.save(payment);
             String reason = "Thanh toán thất bại. Mã lỗi: " + vnpResponseCode;
             return new VnpayCallbackResultDTO(false, reason, payment.getTransaction().getReferenceType());
         }
 
         // 5. Xử lý thanh toán thành công
+        Date paidAt = new Date();
+        if (paymentRepository.markPaidIfPending(payment.getPaymentID(), paidAt) == 0) {
+            // Callback và IPN tới cùng lúc, bên kia đã áp dụng kết quả
+            return new VnpayCallbackResultDTO(true, "Giao dịch đã được xử lý.", payment.getTransaction().getReferenceType());
+        }
         payment.setStatus("PAID");
-        payment.setPaidAt(new Date());
-        paymentRepository.save(payment);
+        payment.setPaidAt(paidAt);
 
         Transaction transaction = payment.getTransaction();
-        transaction.setStatus("PAID");
-        transactionRepository.save(transaction);
 
         // 6. Phân luồng xử lý dựa trên loại giao dịch
         String transactionType = transaction.getReferenceType();
         if ("LISTING_EXTEND".equals(transactionType)) {
+            transaction.setStatus("PAID");
+            transactionRepository.save(transaction);
+
             // Lấy giá gia hạn một cách an toàn
             int pricePerDay = systemConfigService.getExtendPricePerDay();
             if (pricePerDay <= 0) {
@@ -106,6 +171,8 @@ public class VnpayService {
             listingService.extendListingExpiry(transaction.getReferenceID(), days);
             logger.info("VNPAY callback: Listing {} extended by {} days.", transaction.getReferenceID(), days);
         } else { // Mặc định là thanh toán cho đơn hàng
+            // Không lưu entity transaction ở đây: processSuccessfulOrderPayment cộng paidAmount bằng UPDATE
+            // nguyên tử, ghi đè bằng entity đọc từ trước sẽ làm mất tiền của payment khác
             orderService.processSuccessfulOrderPayment(transaction, payment);
             // Kiểm tra order tồn tại trước khi ghi log để tránh NullPointerException
             if (transaction.getOrder() != null) {
@@ -117,4 +184,12 @@ public class VnpayService {
 
         return new VnpayCallbackResultDTO(true, "Thanh toán thành công!", transactionType);
     }
-}
\ No newline at end of file
+
+    private String toJson(Map<String, String> params) {
+        try {
+            return objectMapper.writeValueAsString(params);
+        } catch (JsonProcessingException e) {
+            return null;
+        }
+    }
+}
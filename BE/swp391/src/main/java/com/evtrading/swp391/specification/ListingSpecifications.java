@@ -4,14 +4,24 @@ import com.evtrading.swp391.dto.ListingSearchCriteria;
 import com.evtrading.swp391.entity.Listing;
 import org.springframework.data.jpa.domain.Specification;
 import java.math.BigDecimal;
+import java.util.Collection;
 import java.util.Date;
 
 public class ListingSpecifications {
 
     public static Specification<Listing> build(ListingSearchCriteria c, boolean isModerator) {
+        return build(c, isModerator, null);
+    }
+
+    /**
+     * Giống build(c, isModerator) nhưng khi keywordCandidates khác null thì thay điều kiện LIKE theo từ khóa
+     * bằng listingID IN (keywordCandidates) đã được ListingKeywordIndex tính sẵn.
+     */
+    public static Specification<Listing> build(ListingSearchCriteria c, boolean isModerator,
+                                               Collection<Integer> keywordCandidates) {
         return Specification
                 .where(statusScope(isModerator, c.getStatus()))
-                .and(keyword(c.getKeyword()))
+                .and(keywordCandidates != null ? idIn(keywordCandidates) : keyword(c.getKeyword()))
                 .and(categoryId(c.getCategoryId()))
                 .and(brandId(c.getBrandId()))
                 .and(priceGte(c.getMinPrice()))
@@ -48,6 +58,13 @@ public class ListingSpecifications {
         };
     }
 
+    private static Specification<Listing> idIn(Collection<Integer> ids) {
+        return (root, q, cb) -> {
+            if (ids.isEmpty()) return cb.disjunction();
+            return root.get("listingID").in(ids);
+        };
+    }
+
     private static Specification<Listing> categoryId(Integer categoryId) {
         return (root, q, cb) -> {
             if (categoryId == null) return cb.conjunction();
@@ -0,0 +1,31 @@
+package com.evtrading.swp391.storage;
+
+import com.evtrading.swp391.util.ImageFingerprint;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.util.List;
+
+/**
+ * Nơi lưu ảnh của bài đăng. Chọn implementation bằng app.storage.type:
+ * cloudinary (mặc định, CloudinaryService) hoặc local (LocalImageStorage, ảnh nằm trên đĩa và được phục vụ
+ * qua /api/images/{name}).
+ */
+public interface ImageStorage {
+
+    /**
+     * Ảnh đã lưu: URL để ghi vào ListingImage, id để xóa lại khi cần và dấu vân tay để phát hiện ảnh trùng.
+     */
+    record StoredImage(String url, String id, ImageFingerprint fingerprint) {
+    }
+
+    /**
+     * Lưu các file, kết quả theo đúng thứ tự đầu vào. Nếu một file lỗi thì không để lại ảnh nào
+     * của lần gọi này và ném RuntimeException.
+     */
+    List<StoredImage> storeAll(List<MultipartFile> files);
+
+    /**
+     * Xóa các ảnh đã lưu (dùng để bù trừ khi bước lưu DB thất bại). Lỗi chỉ được ghi log.
+     */
+    void deleteQuietly(List<StoredImage> images);
+}
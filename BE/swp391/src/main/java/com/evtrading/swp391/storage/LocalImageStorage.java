@@ -0,0 +1,110 @@
+package com.evtrading.swp391.storage;
+
+import com.evtrading.swp391.util.ImageFingerprint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+/**
+ * Lưu ảnh trên đĩa cục bộ (app.storage.type=local), dùng khi chạy offline, load test hoặc tự host.
+ * Mỗi ảnh có tên ngẫu nhiên không đổi nội dung nên có thể cache lâu dài phía client.
+ */
+@Service
+@ConditionalOnProperty(name = "app.storage.type", havingValue = "local")
+public class LocalImageStorage implements ImageStorage {
+
+    private static final Logger logger = LoggerFactory.getLogger(LocalImageStorage.class);
+
+    // Tên file do hệ thống sinh: uuid + phần mở rộng ngắn, không cho phép ký tự đường dẫn
+    private static final Pattern STORED_NAME = Pattern.compile("[0-9a-f\\-]{36}(\\.[a-z0-9]{1,5})?");
+    private static final Pattern EXTENSION = Pattern.compile("[a-z0-9]{1,5}");
+
+    private final Path root;
+    private final String publicBaseUrl;
+
+    public LocalImageStorage(@Value("${app.storage.local.dir:uploads}") String dir,
+                             @Value("${app.storage.local.public-url:http://localhost:8080/api/images}") String publicBaseUrl)
+            throws IOException {
+        this.root = Path.of(dir).toAbsolutePath().normalize();
+        this.publicBaseUrl = publicBaseUrl.endsWith("/") ? publicBaseUrl.substring(0, publicBaseUrl.length() - 1)
+                : publicBaseUrl;
+        Files.createDirectories(root);
+    }
+
+    @Override
+    public List<StoredImage> storeAll(List<MultipartFile> files) {
+        List<StoredImage> stored = new ArrayList<>(files.size());
+        try {
+            for (MultipartFile file : files) {
+                String name = UUID.randomUUID() + extensionOf(file.getOriginalFilename());
+                Path target = root.resolve(name);
+                try {
+                    try (InputStream in = file.getInputStream()) {
+                        Files.copy(in, target);
+                    }
+                    stored.add(new StoredImage(publicBaseUrl + "/" + name, name, ImageFingerprint.of(file)));
+                } catch (IOException | UncheckedIOException e) {
+                    // File đang ghi dở (hoặc đã ghi nhưng chưa vào stored) không được deleteQuietly(stored) dọn
+                    try {
+                        Files.deleteIfExists(target);
+                    } catch (IOException deleteError) {
+                        e.addSuppressed(deleteError);
+                    }
+                    throw e;
+                }
+            }
+        } catch (IOException | UncheckedIOException e) {
+            deleteQuietly(stored);
+            throw new RuntimeException("Failed to store image", e);
+        }
+        return stored;
+    }
+
+    @Override
+    public void deleteQuietly(List<StoredImage> images) {
+        for (StoredImage image : images) {
+            try {
+                Files.deleteIfExists(root.resolve(image.id()));
+            } catch (IOException e) {
+                logger.warn("Failed to delete orphan image {}", image.id(), e);
+            }
+        }
+    }
+
+    /**
+     * Đường dẫn của ảnh theo tên đã lưu, hoặc null nếu tên không hợp lệ hay file không tồn tại.
+     */
+    public Path resolve(String name) {
+        if (name == null || !STORED_NAME.matcher(name).matches()) {
+            return null;
+        }
+        Path path = root.resolve(name).normalize();
+        return path.startsWith(root) && Files.isRegularFile(path) ? path : null;
+    }
+
+    private static String extensionOf(String originalName) {
+        if (originalName == null) {
+            return "";
+        }
+        int dot = originalName.lastIndexOf('.');
+        if (dot < 0) {
+            return "";
+        }
+        String ext = originalName.substring(dot + 1).toLowerCase(Locale.ROOT);
+        return EXTENSION.matcher(ext).matches() ? "." + ext : "";
+    }
+}
@@ -0,0 +1,121 @@
+package com.evtrading.swp391.util;
+
+import org.springframework.web.multipart.MultipartFile;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Iterator;
+
+/**
+ * Dấu vân tay của một ảnh để phát hiện ảnh trùng:
+ * contentHash là SHA-256 của nội dung file (trùng từng byte),
+ * perceptualHash là dHash 64 bit (vẫn giống nhau khi ảnh bị resize hoặc nén lại), null nếu không đọc được ảnh.
+ */
+public record ImageFingerprint(String contentHash, Long perceptualHash) {
+
+    // Kích thước cạnh tối thiểu khi giải mã thu nhỏ, đủ cho lưới 9x8 của dHash
+    private static final int DECODE_TARGET = 64;
+    // dHash có ít hơn số bit 1 (hoặc bit 0) này được coi là ảnh phẳng, không dùng để so trùng
+    private static final int MIN_HASH_ENTROPY_BITS = 8;
+
+    public static ImageFingerprint of(MultipartFile file) {
+        try {
+            return new ImageFingerprint(sha256(file), dHash(file));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * perceptualHash nếu nó đủ đặc trưng để so trùng, ngược lại null.
+     * Ảnh một màu, ảnh trắng/đen hay dải màu ngang đều cho dHash gần 0 hoặc -1,
+     * nên hai ảnh phẳng bất kỳ sẽ "trùng" nhau dù không liên quan.
+     */
+    public Long distinctivePerceptualHash() {
+        if (perceptualHash == null) {
+            return null;
+        }
+        int ones = Long.bitCount(perceptualHash);
+        return ones < MIN_HASH_ENTROPY_BITS || ones > Long.SIZE - MIN_HASH_ENTROPY_BITS ? null : perceptualHash;
+    }
+
+    private static String sha256(MultipartFile file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        try (InputStream in = new DigestInputStream(file.getInputStream(), digest)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * dHash: thu ảnh về 9x8 xám, mỗi bit cho biết điểm ảnh có sáng hơn điểm bên phải hay không.
+     */
+    private static Long dHash(MultipartFile file) throws IOException {
+        BufferedImage image = decodeSubsampled(file);
+        if (image == null) {
+            return null;
+        }
+        BufferedImage gray = new BufferedImage(9, 8, BufferedImage.TYPE_BYTE_GRAY);
+        Graphics2D g = gray.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.drawImage(image, 0, 0, 9, 8, null);
+        } finally {
+            g.dispose();
+        }
+        long hash = 0;
+        for (int y = 0; y < 8; y++) {
+            for (int x = 0; x < 8; x++) {
+                int left = gray.getRaster().getSample(x, y, 0);
+                int right = gray.getRaster().getSample(x + 1, y, 0);
+                hash = (hash << 1) | (left > right ? 1 : 0);
+            }
+        }
+        return hash;
+    }
+
+    // Giải mã với subsampling để ảnh lớn không chiếm hàng chục MB heap chỉ để tính hash
+    private static BufferedImage decodeSubsampled(MultipartFile file) throws IOException {
+        try (InputStream raw = file.getInputStream();
+             ImageInputStream in = ImageIO.createImageInputStream(raw)) {
+            if (in == null) {
+                return null;
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                int step = Math.max(1, Math.min(reader.getWidth(0), reader.getHeight(0)) / DECODE_TARGET);
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(step, step, 0, 0);
+                return reader.read(0, param);
+            } catch (IOException | RuntimeException e) {
+                // Định dạng lạ hoặc file hỏng: vẫn còn contentHash
+                return null;
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+}
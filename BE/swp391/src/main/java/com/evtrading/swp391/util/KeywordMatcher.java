@@ -0,0 +1,165 @@
+package com.evtrading.swp391.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Automaton Aho-Corasick cho danh sách từ khóa, dựng một lần và dùng chung giữa các thread (bất biến).
+ *
+ * Từ khóa và văn bản đều được bỏ dấu bằng TextNormalizer.fold nên "sieu re" khớp "Siêu rẻ".
+ * Một lần quét tuyến tính theo độ dài văn bản trả về mọi từ khóa xuất hiện, bất kể danh sách dài bao nhiêu.
+ * Chỉ tính khớp trọn từ: "hot" không khớp trong "photo".
+ */
+public final class KeywordMatcher {
+
+    private static final KeywordMatcher EMPTY = new KeywordMatcher(List.of());
+
+    // Chuyển trạng thái: với mỗi state, các ký tự đã sắp xếp và state đích tương ứng (tra bằng binary search)
+    private final char[][] edgeChars;
+    private final int[][] edgeTargets;
+    private final int[] fail;
+    // Từ khóa kết thúc tại state (kể cả qua fail link), chỉ số vào keywords
+    private final int[][] outputs;
+    private final int[] keywordLengths;
+    private final List<String> keywords;
+
+    private KeywordMatcher(Collection<String> rawKeywords) {
+        Set<String> unique = new LinkedHashSet<>();
+        for (String raw : rawKeywords) {
+            String folded = raw == null ? "" : TextNormalizer.fold(raw.trim());
+            if (!folded.isEmpty()) {
+                unique.add(raw.trim());
+            }
+        }
+        this.keywords = List.copyOf(unique);
+        this.keywordLengths = new int[keywords.size()];
+
+        // 1) Trie
+        List<TreeMap<Character, Integer>> trie = new ArrayList<>();
+        List<List<Integer>> terminal = new ArrayList<>();
+        trie.add(new TreeMap<>());
+        terminal.add(new ArrayList<>());
+        for (int k = 0; k < keywords.size(); k++) {
+            String folded = TextNormalizer.fold(keywords.get(k));
+            keywordLengths[k] = folded.length();
+            int state = 0;
+            for (int i = 0; i < folded.length(); i++) {
+                Integer next = trie.get(state).get(folded.charAt(i));
+                if (next == null) {
+                    next = trie.size();
+                    trie.add(new TreeMap<>());
+                    terminal.add(new ArrayList<>());
+                    trie.get(state).put(folded.charAt(i), next);
+                }
+                state = next;
+            }
+            terminal.get(state).add(k);
+        }
+
+        int size = trie.size();
+        this.edgeChars = new char[size][];
+        this.edgeTargets = new int[size][];
+        for (int s = 0; s < size; s++) {
+            TreeMap<Character, Integer> edges = trie.get(s);
+            edgeChars[s] = new char[edges.size()];
+            edgeTargets[s] = new int[edges.size()];
+            int i = 0;
+            for (var e : edges.entrySet()) {
+                edgeChars[s][i] = e.getKey();
+                edgeTargets[s][i] = e.getValue();
+                i++;
+            }
+        }
+
+        // 2) Fail link theo BFS, gộp output của state fail vào state hiện tại
+        this.fail = new int[size];
+        this.outputs = new int[size][];
+        outputs[0] = toArray(terminal.get(0));
+        Deque<Integer> queue = new ArrayDeque<>();
+        for (int child : edgeTargets[0]) {
+            fail[child] = 0;
+            outputs[child] = toArray(terminal.get(child));
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            for (int i = 0; i < edgeChars[state].length; i++) {
+                char c = edgeChars[state][i];
+                int child = edgeTargets[state][i];
+                int f = fail[state];
+                while (f != 0 && step(f, c) < 0) {
+                    f = fail[f];
+                }
+                int target = step(f, c);
+                fail[child] = target >= 0 ? target : 0;
+                outputs[child] = concat(toArray(terminal.get(child)), outputs[fail[child]]);
+                queue.add(child);
+            }
+        }
+    }
+
+    public static KeywordMatcher of(Collection<String> keywords) {
+        return keywords == null || keywords.isEmpty() ? EMPTY : new KeywordMatcher(keywords);
+    }
+
+    public List<String> getKeywords() {
+        return keywords;
+    }
+
+    /**
+     * Trả về các từ khóa (dạng gốc như trong cấu hình) xuất hiện trong văn bản, theo thứ tự gặp đầu tiên.
+     */
+    public Set<String> findAll(String text) {
+        Set<String> found = new LinkedHashSet<>();
+        if (keywords.isEmpty()) {
+            return found;
+        }
+        String folded = TextNormalizer.fold(text);
+        int state = 0;
+        for (int i = 0; i < folded.length(); i++) {
+            char c = folded.charAt(i);
+            int next = step(state, c);
+            while (next < 0 && state != 0) {
+                state = fail[state];
+                next = step(state, c);
+            }
+            state = next < 0 ? 0 : next;
+            for (int k : outputs[state]) {
+                int start = i + 1 - keywordLengths[k];
+                if (isBoundary(folded, start - 1) && isBoundary(folded, i + 1)) {
+                    found.add(keywords.get(k));
+                }
+            }
+        }
+        return found;
+    }
+
+    private int step(int state, char c) {
+        int idx = Arrays.binarySearch(edgeChars[state], c);
+        return idx >= 0 ? edgeTargets[state][idx] : -1;
+    }
+
+    private static boolean isBoundary(String text, int index) {
+        return index < 0 || index >= text.length() || !Character.isLetterOrDigit(text.charAt(index));
+    }
+
+    private static int[] toArray(List<Integer> values) {
+        return values.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private static int[] concat(int[] a, int[] b) {
+        if (b.length == 0) {
+            return a;
+        }
+        int[] result = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return result;
+    }
+}
@@ -0,0 +1,91 @@
+package com.evtrading.swp391.util;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Đếm sự kiện theo cửa sổ trượt cho từng khóa (user, IP...), dùng cho giới hạn tần suất trong bộ nhớ.
+ *
+ * Mỗi khóa có một ring buffer gồm capacity mốc thời gian; ghi là một getAndIncrement + một set,
+ * đếm là quét ring, không có khóa nào. Vì ring chỉ giữ capacity sự kiện gần nhất nên kết quả đếm
+ * bão hòa ở capacity: đủ để so với mọi ngưỡng <= capacity, với bất kỳ độ dài cửa sổ nào.
+ * Mốc thời gian phải được ghi theo thứ tự tăng dần (gần đúng) để ring bỏ đi đúng sự kiện cũ nhất.
+ */
+public final class SlidingWindowCounter<K> {
+
+    private final int capacity;
+    private final Map<K, Ring> rings = new ConcurrentHashMap<>();
+
+    public SlidingWindowCounter(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.capacity = capacity;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public void record(K key, long timestampMillis) {
+        rings.computeIfAbsent(key, k -> new Ring(capacity)).add(timestampMillis);
+    }
+
+    /**
+     * Số sự kiện của key có mốc thời gian sau sinceMillis (tối đa capacity).
+     */
+    public int count(K key, long sinceMillis) {
+        return count(key, sinceMillis, Long.MAX_VALUE);
+    }
+
+    /**
+     * Số sự kiện của key có mốc thời gian nằm trong khoảng mở (sinceMillis, untilMillis), tối đa capacity.
+     */
+    public int count(K key, long sinceMillis, long untilMillis) {
+        Ring ring = rings.get(key);
+        return ring == null ? 0 : ring.countBetween(sinceMillis, untilMillis);
+    }
+
+    /**
+     * Bỏ các khóa không có sự kiện nào sau olderThanMillis, để map không phình theo số user từng hoạt động.
+     * Một lần ghi chạy đúng lúc khóa bị bỏ có thể bị mất; chấp nhận được vì khóa đó đã im lặng cả cửa sổ.
+     */
+    public void evictIdle(long olderThanMillis) {
+        rings.values().removeIf(ring -> ring.latest <= olderThanMillis);
+    }
+
+    public int size() {
+        return rings.size();
+    }
+
+    private static final class Ring {
+        private final AtomicLongArray stamps;
+        private final AtomicInteger next = new AtomicInteger();
+        private volatile long latest;
+
+        Ring(int capacity) {
+            this.stamps = new AtomicLongArray(capacity);
+        }
+
+        void add(long timestampMillis) {
+            int slot = Math.floorMod(next.getAndIncrement(), stamps.length());
+            stamps.set(slot, timestampMillis);
+            if (timestampMillis > latest) {
+                latest = timestampMillis;
+            }
+        }
+
+        int countBetween(long sinceMillis, long untilMillis) {
+            int count = 0;
+            for (int i = 0; i < stamps.length(); i++) {
+                long stamp = stamps.get(i);
+                if (stamp > sinceMillis && stamp < untilMillis) {
+                    count++;
+                }
+            }
+            return count;
+        }
+    }
+}
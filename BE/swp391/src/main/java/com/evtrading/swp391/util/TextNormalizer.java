@@ -0,0 +1,56 @@
+package com.evtrading.swp391.util;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Chuẩn hóa văn bản tiếng Việt cho tìm kiếm và lọc spam:
+ * bỏ dấu ("Xe điện" -> "xe dien"), chữ thường và tách từ theo ký tự không phải chữ/số.
+ */
+public final class TextNormalizer {
+
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+
+    private TextNormalizer() {
+        // Utility class
+    }
+
+    /**
+     * Bỏ dấu và chuyển về chữ thường. Trả về chuỗi rỗng nếu đầu vào null.
+     */
+    public static String fold(String text) {
+        if (text == null || text.isEmpty()) {
+            return "";
+        }
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        String stripped = COMBINING_MARKS.matcher(decomposed).replaceAll("");
+        // "đ"/"Đ" không tách được bằng NFD nên phải thay thủ công
+        return stripped.replace('đ', 'd').replace('Đ', 'D').toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Bỏ dấu rồi tách thành các từ gồm chữ cái và chữ số.
+     */
+    public static List<String> tokenize(String text) {
+        String folded = fold(text);
+        List<String> tokens = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i < folded.length(); i++) {
+            if (Character.isLetterOrDigit(folded.charAt(i))) {
+                if (start < 0) {
+                    start = i;
+                }
+            } else if (start >= 0) {
+                tokens.add(folded.substring(start, i));
+                start = -1;
+            }
+        }
+        if (start >= 0) {
+            tokens.add(folded.substring(start));
+        }
+        return tokens;
+    }
+}
@@ -0,0 +1,235 @@
+package com.evtrading.swp391.util;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Ký và xác thực tham số VNPAY bằng HMAC-SHA512 với secret cấu hình sẵn.
+ *
+ * Mac được khởi tạo một lần từ secret rồi clone cho mỗi thread, nên mỗi lần ký không còn gọi
+ * Mac.getInstance/init. Hash data và query string được dựng trong một lượt StringBuilder trên các
+ * tham số đã sắp xếp, mã hóa URL tại chỗ (cho kết quả giống URLEncoder: US_ASCII cho hash data như demo
+ * VNPAY, UTF-8 cho query string) và hex bằng bảng tra.
+ * Thread-safe; dùng chung một instance cho toàn ứng dụng.
+ */
+public final class VnpaySigner {
+
+    public static final String SECURE_HASH = "vnp_SecureHash";
+
+    private static final String ALGORITHM = "HmacSHA512";
+    private static final char[] HEX_LOWER = "0123456789abcdef".toCharArray();
+    private static final char[] HEX_UPPER = "0123456789ABCDEF".toCharArray();
+    private static final DateTimeFormatter VNP_DATE = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
+    // Hạn thanh toán: +15 phút (theo demo VNPAY)
+    private static final long EXPIRE_MILLIS = 15 * 60_000L;
+
+    private final SecretKeySpec key;
+    private final Mac prototype;
+    private final ThreadLocal<Mac> macs;
+
+    public VnpaySigner(String hashSecret) {
+        if (hashSecret == null || hashSecret.isEmpty()) {
+            throw new IllegalArgumentException("VNPAY hash secret must not be empty");
+        }
+        this.key = new SecretKeySpec(hashSecret.getBytes(StandardCharsets.UTF_8), ALGORITHM);
+        this.prototype = newMac();
+        this.macs = ThreadLocal.withInitial(this::copyPrototype);
+    }
+
+    /**
+     * Tạo URL thanh toán VNPAY (đã ký) cho số tiền và mã tham chiếu.
+     */
+    public String createPaymentUrl(String tmnCode, String payUrl, String returnUrl,
+                                   BigDecimal amount, String txnRef, String ipAddr) {
+        long now = System.currentTimeMillis();
+        ZoneId zone = ZoneId.systemDefault();
+        SortedMap<String, String> params = new TreeMap<>();
+        params.put("vnp_Version", "2.1.0");
+        params.put("vnp_Command", "pay");
+        params.put("vnp_TmnCode", tmnCode);
+        params.put("vnp_Amount", amount.multiply(BigDecimal.valueOf(100)).toBigInteger().toString());
+        params.put("vnp_CurrCode", "VND");
+        params.put("vnp_TxnRef", txnRef);
+        params.put("vnp_OrderInfo", "Thanh toan don hang " + txnRef); // Không # để tránh lỗi
+        params.put("vnp_OrderType", "other");
+        params.put("vnp_Locale", "vn");
+        params.put("vnp_ReturnUrl", returnUrl);
+        params.put("vnp_IpAddr", ipAddr);
+        params.put("vnp_CreateDate", VNP_DATE.format(Instant.ofEpochMilli(now).atZone(zone)));
+        params.put("vnp_ExpireDate", VNP_DATE.format(Instant.ofEpochMilli(now + EXPIRE_MILLIS).atZone(zone)));
+
+        StringBuilder url = new StringBuilder(payUrl.length() + 512).append(payUrl).append('?');
+        int queryStart = url.length();
+        for (Map.Entry<String, String> param : params.entrySet()) {
+            String value = param.getValue();
+            if (value != null && !value.isEmpty()) {
+                if (url.length() > queryStart) {
+                    url.append('&');
+                }
+                url.append(param.getKey()).append('=');
+                appendUrlEncoded(url, value, true);
+            }
+        }
+        return url.append('&').append(SECURE_HASH).append('=').append(sign(buildHashData(params))).toString();
+    }
+
+    /**
+     * Kiểm tra vnp_SecureHash của tham số callback/IPN (so sánh thời gian hằng, không phân biệt hoa thường).
+     */
+    public boolean verify(Map<String, String> params) {
+        String secureHash = params.get(SECURE_HASH);
+        if (secureHash == null) {
+            return false;
+        }
+        return equalsHexIgnoreCase(sign(buildHashData(params)), secureHash);
+    }
+
+    /**
+     * HMAC-SHA512 của data (UTF-8), dạng hex chữ thường.
+     */
+    public String sign(CharSequence data) {
+        Mac mac = macs.get();
+        byte[] digest = mac.doFinal(toBytes(data));
+        char[] hex = new char[digest.length * 2];
+        for (int i = 0; i < digest.length; i++) {
+            hex[2 * i] = HEX_LOWER[(digest[i] >> 4) & 0xF];
+            hex[2 * i + 1] = HEX_LOWER[digest[i] & 0xF];
+        }
+        return new String(hex);
+    }
+
+    /**
+     * Hash data theo demo VNPAY: sắp xếp theo tên, bỏ giá trị rỗng và vnp_SecureHash,
+     * giá trị mã hóa URL bằng US_ASCII.
+     */
+    public static String buildHashData(Map<String, String> params) {
+        Iterable<String> fieldNames;
+        if (params instanceof SortedMap<String, String> sorted && sorted.comparator() == null) {
+            fieldNames = sorted.keySet();
+        } else {
+            List<String> names = new ArrayList<>(params.keySet());
+            Collections.sort(names);
+            fieldNames = names;
+        }
+        StringBuilder hashData = new StringBuilder(params.size() * 32);
+        for (String fieldName : fieldNames) {
+            String value = params.get(fieldName);
+            if (value != null && !value.isEmpty() && !SECURE_HASH.equals(fieldName)) {
+                if (hashData.length() > 0) {
+                    hashData.append('&');
+                }
+                hashData.append(fieldName).append('=');
+                appendUrlEncoded(hashData, value, false);
+            }
+        }
+        return hashData.toString();
+    }
+
+    /**
+     * Mã hóa giống URLEncoder.encode(value, UTF_8 hoặc US_ASCII) nhưng ghi thẳng vào out.
+     * Với US_ASCII, mỗi ký tự (hoặc cặp surrogate) ngoài ASCII thành "%3F" như URLEncoder.
+     */
+    static void appendUrlEncoded(StringBuilder out, String value, boolean utf8) {
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                    || c == '.' || c == '-' || c == '*' || c == '_') {
+                out.append(c);
+            } else if (c == ' ') {
+                out.append('+');
+            } else if (c < 0x80) {
+                appendPercent(out, c);
+            } else {
+                int codePoint = c;
+                boolean pair = Character.isHighSurrogate(c) && i + 1 < length
+                        && Character.isLowSurrogate(value.charAt(i + 1));
+                if (pair) {
+                    codePoint = Character.toCodePoint(c, value.charAt(++i));
+                }
+                if (!utf8 || (Character.isSurrogate(c) && !pair)) {
+                    // Ký tự không mã hóa được (hoặc surrogate lẻ) được thay bằng '?'
+                    appendPercent(out, '?');
+                } else if (codePoint < 0x800) {
+                    appendPercent(out, 0xC0 | (codePoint >> 6));
+                    appendPercent(out, 0x80 | (codePoint & 0x3F));
+                } else if (codePoint < 0x10000) {
+                    appendPercent(out, 0xE0 | (codePoint >> 12));
+                    appendPercent(out, 0x80 | ((codePoint >> 6) & 0x3F));
+                    appendPercent(out, 0x80 | (codePoint & 0x3F));
+                } else {
+                    appendPercent(out, 0xF0 | (codePoint >> 18));
+                    appendPercent(out, 0x80 | ((codePoint >> 12) & 0x3F));
+                    appendPercent(out, 0x80 | ((codePoint >> 6) & 0x3F));
+                    appendPercent(out, 0x80 | (codePoint & 0x3F));
+                }
+            }
+        }
+    }
+
+    private static void appendPercent(StringBuilder out, int b) {
+        out.append('%').append(HEX_UPPER[(b >> 4) & 0xF]).append(HEX_UPPER[b & 0xF]);
+    }
+
+    // Hash data đã mã hóa URL nên gần như luôn là ASCII: chép thẳng từng ký tự thay vì đi qua CharsetEncoder
+    private static byte[] toBytes(CharSequence data) {
+        int length = data.length();
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            char c = data.charAt(i);
+            if (c >= 0x80) {
+                return data.toString().getBytes(StandardCharsets.UTF_8);
+            }
+            bytes[i] = (byte) c;
+        }
+        return bytes;
+    }
+
+    private static boolean equalsHexIgnoreCase(String expected, String actual) {
+        if (expected.length() != actual.length()) {
+            return false;
+        }
+        int diff = 0;
+        for (int i = 0; i < expected.length(); i++) {
+            char c = actual.charAt(i);
+            if (c >= 'A' && c <= 'F') {
+                c += 'a' - 'A';
+            }
+            diff |= expected.charAt(i) ^ c;
+        }
+        return diff == 0;
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Cannot initialize " + ALGORITHM, e);
+        }
+    }
+
+    private Mac copyPrototype() {
+        try {
+            synchronized (prototype) {
+                return (Mac) prototype.clone();
+            }
+        } catch (CloneNotSupportedException e) {
+            // Provider không hỗ trợ clone: khởi tạo riêng cho thread này (vẫn chỉ một lần mỗi thread)
+            return newMac();
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.evtrading.swp391.service;
+
+import com.evtrading.swp391.config.VnpayConfig;
+import com.evtrading.swp391.dto.OrderRequestDTO;
+import com.evtrading.swp391.entity.Brand;
+import com.evtrading.swp391.entity.Category;
+import com.evtrading.swp391.entity.Role;
+import com.evtrading.swp391.entity.User;
+import com.evtrading.swp391.exception.ListingUnavailableException;
+import com.evtrading.swp391.repository.BrandRepository;
+import com.evtrading.swp391.repository.CategoryRepository;
+import com.evtrading.swp391.repository.ListingRepository;
+import com.evtrading.swp391.repository.OrderRepository;
+import com.evtrading.swp391.repository.RoleRepository;
+import com.evtrading.swp391.repository.TransactionRepository;
+import com.evtrading.swp391.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Nhiều người mua đặt cùng một bài đăng cùng lúc: chỉ đúng một đơn hàng được tạo,
+ * mọi request còn lại nhận ListingUnavailableException (409) thay vì lỗi khóa/deadlock.
+ */
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:order-concurrency;MODE=MSSQLServer;LOCK_TIMEOUT=30000;DB_CLOSE_DELAY=-1;NON_KEYWORDS=YEAR",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.hikari.maximum-pool-size=32",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.show-sql=false",
+        "logging.level.org.hibernate.SQL=WARN",
+        "vnpay.tmnCode=TEST",
+        "vnpay.hashSecret=TEST",
+        "vnpay.payUrl=http://localhost/pay",
+        "vnpay.returnUrl=http://localhost/return"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({OrderService.class, VnpayConfig.class})
+// Mỗi lần gọi createOrder phải tự commit như trong ứng dụng thật
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class OrderServiceConcurrencyTest {
+
+    private static final int BUYERS = 50;
+    private static final int ORDERS = 400;
+    private static final int THREADS = 64;
+
+    @Autowired
+    private OrderService orderService;
+    @Autowired
+    private RoleRepository roleRepository;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private CategoryRepository categoryRepository;
+    @Autowired
+    private BrandRepository brandRepository;
+    @Autowired
+    private ListingRepository listingRepository;
+    @Autowired
+    private OrderRepository orderRepository;
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Test
+    void onlyOneOfManyConcurrentOrdersReservesTheListing() throws Exception {
+        Role role = roleRepository.save(TestFixtures.role("MEMBER"));
+        User seller = userRepository.save(TestFixtures.user(role, "seller"));
+        List<String> buyers = new ArrayList<>();
+        for (int i = 0; i < BUYERS; i++) {
+            buyers.add(userRepository.save(TestFixtures.user(role, "buyer" + i)).getUsername());
+        }
+        Category category = categoryRepository.save(TestFixtures.category("Xe điện"));
+        Brand brand = brandRepository.save(TestFixtures.brand("VinFast"));
+        Integer listingId = listingRepository.save(
+                TestFixtures.listing(seller, category, brand, "VinFast VF8", "ACTIVE")).getListingID();
+
+        AtomicInteger succeeded = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        ConcurrentLinkedQueue<Throwable> unexpected = new ConcurrentLinkedQueue<>();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < ORDERS; i++) {
+                String buyer = buyers.get(i % BUYERS);
+                futures.add(pool.submit(() -> {
+                    OrderRequestDTO dto = new OrderRequestDTO();
+                    dto.setListingId(listingId);
+                    dto.setQuantity(1);
+                    try {
+                        start.await();
+                        orderService.createOrder(dto, new UsernamePasswordAuthenticationToken(buyer, null));
+                        succeeded.incrementAndGet();
+                    } catch (ListingUnavailableException e) {
+                        rejected.incrementAndGet();
+                    } catch (Throwable e) {
+                        unexpected.add(e);
+                    }
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertTrue(unexpected.isEmpty(), () -> "Unexpected failures: " + unexpected);
+        assertEquals(1, succeeded.get());
+        assertEquals(ORDERS - 1, rejected.get());
+        assertEquals(1, orderRepository.count());
+        assertEquals(1, transactionRepository.count());
+        assertEquals("PROCESSING", listingRepository.findById(listingId).orElseThrow().getStatus());
+    }
+}
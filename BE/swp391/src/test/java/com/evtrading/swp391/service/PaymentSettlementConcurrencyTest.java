@@ -0,0 +1,210 @@
+package com.evtrading.swp391.service;
+
+import com.evtrading.swp391.config.VnpayConfig;
+import com.evtrading.swp391.dto.VnpayCallbackResultDTO;
+import com.evtrading.swp391.entity.Brand;
+import com.evtrading.swp391.entity.Category;
+import com.evtrading.swp391.entity.Listing;
+import com.evtrading.swp391.entity.Order;
+import com.evtrading.swp391.entity.Payment;
+import com.evtrading.swp391.entity.Role;
+import com.evtrading.swp391.entity.Transaction;
+import com.evtrading.swp391.entity.User;
+import com.evtrading.swp391.repository.BrandRepository;
+import com.evtrading.swp391.repository.CategoryRepository;
+import com.evtrading.swp391.repository.ListingRepository;
+import com.evtrading.swp391.repository.OrderRepository;
+import com.evtrading.swp391.repository.PaymentRepository;
+import com.evtrading.swp391.repository.RoleRepository;
+import com.evtrading.swp391.repository.TransactionRepository;
+import com.evtrading.swp391.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Nhiều payment của cùng một transaction được VNPAY xác nhận cùng lúc, mỗi payment nhận hai callback
+ * (return URL và IPN) cho cùng txnRef: paidAmount phải bằng tổng mọi payment, mỗi payment chỉ được cộng
+ * một lần, và trạng thái FULLY_PAID/PARTIALLY_PAID phải khớp với tổng đó.
+ */
+// Không dùng MODE=MSSQLServer: ở mode đó H2 coi các NULL là trùng trong cột unique batteryID/vehicleID,
+// trong khi test cần hai bài đăng không có pin/xe
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:payment-settlement;LOCK_TIMEOUT=30000;DB_CLOSE_DELAY=-1;NON_KEYWORDS=YEAR",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.hikari.maximum-pool-size=32",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.show-sql=false",
+        "logging.level.org.hibernate.SQL=WARN",
+        "vnpay.tmnCode=TEST",
+        "vnpay.hashSecret=TEST",
+        "vnpay.payUrl=http://localhost/pay",
+        "vnpay.returnUrl=http://localhost/return"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({OrderService.class, VnpayService.class, VnpayConfig.class})
+@ImportAutoConfiguration(JacksonAutoConfiguration.class)
+// Mỗi lần xác nhận payment phải tự commit như trong ứng dụng thật
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class PaymentSettlementConcurrencyTest {
+
+    private static final int PAYMENTS_PER_TRANSACTION = 60;
+    private static final int CALLBACKS_PER_PAYMENT = 2;
+    private static final int THREADS = 32;
+    private static final BigDecimal INSTALLMENT = new BigDecimal("1500000.00");
+
+    @Autowired
+    private VnpayService vnpayService;
+    // Chỉ dùng cho thanh toán gia hạn bài đăng, không chạy trong test này
+    @MockitoBean
+    private ListingService listingService;
+    @MockitoBean
+    private SystemConfigService systemConfigService;
+    @Autowired
+    private RoleRepository roleRepository;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private CategoryRepository categoryRepository;
+    @Autowired
+    private BrandRepository brandRepository;
+    @Autowired
+    private ListingRepository listingRepository;
+    @Autowired
+    private OrderRepository orderRepository;
+    @Autowired
+    private TransactionRepository transactionRepository;
+    @Autowired
+    private PaymentRepository paymentRepository;
+
+    @Test
+    void concurrentPaymentsOfOneTransactionAreAllCounted() throws Exception {
+        Role role = roleRepository.save(TestFixtures.role("MEMBER"));
+        User seller = userRepository.save(TestFixtures.user(role, "seller"));
+        User buyer = userRepository.save(TestFixtures.user(role, "buyer"));
+        Category category = categoryRepository.save(TestFixtures.category("Xe điện"));
+        Brand brand = brandRepository.save(TestFixtures.brand("VinFast"));
+
+        // Một transaction được trả đủ, một transaction thiếu đúng một kỳ
+        BigDecimal fullTotal = INSTALLMENT.multiply(BigDecimal.valueOf(PAYMENTS_PER_TRANSACTION));
+        Transaction full = transaction(order(listing(seller, category, brand, "VF8"), buyer, fullTotal), fullTotal);
+        BigDecimal partialTotal = fullTotal.add(INSTALLMENT);
+        Transaction partial = transaction(order(listing(seller, category, brand, "VF9"), buyer, partialTotal), partialTotal);
+
+        List<String> callbacks = new ArrayList<>();
+        for (int i = 0; i < PAYMENTS_PER_TRANSACTION; i++) {
+            String fullRef = payment(full, "FULL" + i);
+            String partialRef = payment(partial, "PART" + i);
+            for (int c = 0; c < CALLBACKS_PER_PAYMENT; c++) {
+                callbacks.add(fullRef);
+                callbacks.add(partialRef);
+            }
+        }
+        Collections.shuffle(callbacks);
+
+        ConcurrentLinkedQueue<Throwable> failures = new ConcurrentLinkedQueue<>();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (String txnRef : callbacks) {
+                futures.add(pool.submit(() -> {
+                    try {
+                        start.await();
+                        VnpayCallbackResultDTO result = vnpayService.applyPaymentResult(txnRef, "00");
+                        if (!result.isSuccess()) {
+                            failures.add(new AssertionError(txnRef + ": " + result.getMessage()));
+                        }
+                    } catch (Throwable e) {
+                        failures.add(e);
+                    }
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertTrue(failures.isEmpty(), () -> "Unexpected failures: " + failures);
+        assertEquals(2L * PAYMENTS_PER_TRANSACTION, paymentRepository.findAll().stream()
+                .filter(p -> "PAID".equals(p.getStatus())).count());
+
+        Transaction settled = transactionRepository.findById(full.getTransactionID()).orElseThrow();
+        assertEquals(0, fullTotal.compareTo(settled.getPaidAmount()), () -> "paidAmount " + settled.getPaidAmount());
+        assertEquals("FULLY_PAID", settled.getStatus());
+        Order completed = orderRepository.findById(full.getOrder().getOrderID()).orElseThrow();
+        assertEquals("COMPLETED", completed.getStatus());
+        assertEquals("SOLD", listingRepository.findById(completed.getListing().getListingID()).orElseThrow().getStatus());
+
+        Transaction unsettled = transactionRepository.findById(partial.getTransactionID()).orElseThrow();
+        assertEquals(0, fullTotal.compareTo(unsettled.getPaidAmount()), () -> "paidAmount " + unsettled.getPaidAmount());
+        assertEquals("PARTIALLY_PAID", unsettled.getStatus());
+        Order open = orderRepository.findById(partial.getOrder().getOrderID()).orElseThrow();
+        assertEquals("PENDING", open.getStatus());
+        assertEquals("PROCESSING", listingRepository.findById(open.getListing().getListingID()).orElseThrow().getStatus());
+    }
+
+    private Listing listing(User seller, Category category, Brand brand, String title) {
+        return listingRepository.save(TestFixtures.listing(seller, category, brand, title, "PROCESSING"));
+    }
+
+    private Order order(Listing listing, User buyer, BigDecimal total) {
+        Order order = new Order();
+        order.setBuyer(buyer);
+        order.setListing(listing);
+        order.setQuantity(1);
+        order.setPrice(total);
+        order.setTotalAmount(total);
+        order.setStatus("PENDING");
+        order.setCreatedAt(new Date());
+        return orderRepository.save(order);
+    }
+
+    private Transaction transaction(Order order, BigDecimal total) {
+        Transaction transaction = new Transaction();
+        transaction.setOrder(order);
+        transaction.setType("ORDER");
+        transaction.setTotalAmount(total);
+        transaction.setPaidAmount(BigDecimal.ZERO);
+        transaction.setStatus("PENDING");
+        transaction.setCreatedAt(new Date());
+        return transactionRepository.save(transaction);
+    }
+
+    private String payment(Transaction transaction, String txnRef) {
+        Payment payment = new Payment();
+        payment.setTransaction(transaction);
+        payment.setAmount(INSTALLMENT);
+        payment.setMethod("VNPAY");
+        payment.setProvider("VNPAY");
+        payment.setStatus("PENDING");
+        payment.setTxnRef(txnRef);
+        return paymentRepository.save(payment).getTxnRef();
+    }
+}
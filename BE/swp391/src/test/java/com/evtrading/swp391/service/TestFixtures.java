@@ -0,0 +1,60 @@
+package com.evtrading.swp391.service;
+
+import com.evtrading.swp391.entity.Brand;
+import com.evtrading.swp391.entity.Category;
+import com.evtrading.swp391.entity.Listing;
+import com.evtrading.swp391.entity.Role;
+import com.evtrading.swp391.entity.User;
+
+import java.math.BigDecimal;
+import java.util.Date;
+
+/**
+ * Entity mẫu (chưa lưu) dùng chung cho các test service chạy trên H2.
+ */
+final class TestFixtures {
+
+    private TestFixtures() {
+    }
+
+    static Role role(String name) {
+        Role role = new Role();
+        role.setRoleName(name);
+        return role;
+    }
+
+    static User user(Role role, String username) {
+        User user = new User();
+        user.setRole(role);
+        user.setUsername(username);
+        user.setEmail(username + "@example.com");
+        user.setPassword("secret");
+        user.setStatus("ACTIVE");
+        user.setCreatedAt(new Date());
+        return user;
+    }
+
+    static Category category(String name) {
+        Category category = new Category();
+        category.setCategoryName(name);
+        return category;
+    }
+
+    static Brand brand(String name) {
+        Brand brand = new Brand();
+        brand.setBrandName(name);
+        return brand;
+    }
+
+    static Listing listing(User seller, Category category, Brand brand, String title, String status) {
+        Listing listing = new Listing();
+        listing.setUser(seller);
+        listing.setCategory(category);
+        listing.setBrand(brand);
+        listing.setTitle(title);
+        listing.setPrice(new BigDecimal("500000000"));
+        listing.setStatus(status);
+        listing.setCreatedAt(new Date());
+        return listing;
+    }
+}
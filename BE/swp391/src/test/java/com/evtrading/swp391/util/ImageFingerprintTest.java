@@ -0,0 +1,86 @@
+package com.evtrading.swp391.util;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockMultipartFile;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Ảnh phẳng (một màu) cho dHash suy biến và không được dùng để so trùng;
+ * ảnh có chi tiết vẫn giữ được dHash khi bị thu nhỏ.
+ */
+class ImageFingerprintTest {
+
+    @Test
+    void solidImagesHaveNoDistinctivePerceptualHash() throws IOException {
+        ImageFingerprint white = ImageFingerprint.of(png(solid(640, 480, Color.WHITE)));
+        ImageFingerprint red = ImageFingerprint.of(png(solid(320, 200, Color.RED)));
+
+        assertNotNull(white.perceptualHash());
+        assertNotEquals(white.contentHash(), red.contentHash());
+        // Hai ảnh phẳng khác nhau có cùng dHash, nên không được coi là trùng
+        assertEquals(white.perceptualHash(), red.perceptualHash());
+        assertNull(white.distinctivePerceptualHash());
+        assertNull(red.distinctivePerceptualHash());
+    }
+
+    @Test
+    void detailedImageKeepsItsPerceptualHashWhenResized() throws IOException {
+        BufferedImage original = noise(512, 512, 42);
+        ImageFingerprint full = ImageFingerprint.of(png(original));
+        ImageFingerprint half = ImageFingerprint.of(png(resize(original, 256, 256)));
+
+        assertNotNull(full.distinctivePerceptualHash());
+        assertEquals(full.distinctivePerceptualHash(), half.distinctivePerceptualHash());
+    }
+
+    private static BufferedImage solid(int width, int height, Color color) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(color);
+        g.fillRect(0, 0, width, height);
+        g.dispose();
+        return image;
+    }
+
+    // Các ô 64x64 có độ sáng ngẫu nhiên: đủ chi tiết ở lưới 9x8 và ổn định khi thu nhỏ
+    private static BufferedImage noise(int width, int height, long seed) {
+        Random random = new Random(seed);
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        for (int y = 0; y < height; y += 64) {
+            for (int x = 0; x < width; x += 64) {
+                int v = random.nextInt(256);
+                g.setColor(new Color(v, v, v));
+                g.fillRect(x, y, 64, 64);
+            }
+        }
+        g.dispose();
+        return image;
+    }
+
+    private static BufferedImage resize(BufferedImage source, int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.drawImage(source, 0, 0, width, height, null);
+        g.dispose();
+        return image;
+    }
+
+    private static MockMultipartFile png(BufferedImage image) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return new MockMultipartFile("file", "image.png", "image/png", out.toByteArray());
+    }
+}
@@ -16,6 +16,7 @@ const STATUS_ORDER = [
   "PROCESSING",
   "SOLD",
   "PENDING",
+  "PENDING_SCAN",
   "FLAGGED",
   "REJECTED",
 ];
@@ -26,6 +27,7 @@ const STATUS_LABELS = {
   SOLD: "Đã bán",
   PROCESSING: "Đang thanh toán",
   PENDING: "Đang chờ duyệt",
+  PENDING_SCAN: "Đang kiểm tra tự động",
   FLAGGED: "Bị flagged",
   REJECTED: "Bị từ chối",
 };
@@ -39,7 +41,7 @@ const isEditableStatus = (status) => {
 const FILTER_MAP = {
   ALL: () => true,
   PAYING: (status) =>
-    ["PENDING", "PROCESSING", "PARTIALLY_PAID"].includes(normalizeStatus(status)),
+    ["PENDING", "PENDING_SCAN", "PROCESSING", "PARTIALLY_PAID"].includes(normalizeStatus(status)),
   ACTIVE: (status) => normalizeStatus(status) === "ACTIVE",
   EXPIRED: (status) => normalizeStatus(status) === "EXPIRED",
   SOLD: (status) => normalizeStatus(status) === "SOLD",